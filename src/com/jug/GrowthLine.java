@@ -3,17 +3,28 @@
  */
 package com.jug;
 
+import gurobi.GRBEnv;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.Vector;
 
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.componenttree.ComponentTreeNode;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.DoubleAccess;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
 import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.view.IntervalView;
+import net.imglib2.view.Views;
 
 import com.jug.lp.AbstractAssignment;
 import com.jug.lp.GrowthLineTrackingILP;
 import com.jug.lp.Hypothesis;
+import com.jug.util.DoubleTypeStackFactory;
 
 /**
  * @author jug
@@ -28,6 +39,17 @@ public class GrowthLine {
 			// Hypothesis< ComponentTreeNode< DoubleType, ? > >,
 			// AbstractAssignment< Hypothesis< ComponentTreeNode< DoubleType, ? > > > > ilp;
 
+	/**
+	 * The columns of the (preprocessed) image stack this growth line lives
+	 * in, one slice per frame. See <code>createStrip</code>.
+	 */
+	private Img< DoubleType > strip;
+	/**
+	 * The x-position of the first column of <code>strip</code> in the full
+	 * image stack.
+	 */
+	private long stripOffsetX;
+
 	// -------------------------------------------------------------------------------------
 	// setters and getters
 	// -------------------------------------------------------------------------------------
@@ -45,6 +67,32 @@ public class GrowthLine {
 		return ilp;
 	}
 
+	/**
+	 * @return the strip stack of this growth line (zero-min), or
+	 *         <code>null</code> if none was extracted.
+	 */
+	public Img< DoubleType > getStrip() {
+		return strip;
+	}
+
+	/**
+	 * @return the x-position of the first column of the strip stack in the
+	 *         full image stack.
+	 */
+	public long getStripOffsetX() {
+		return stripOffsetX;
+	}
+
+	/**
+	 * @return a view onto the strip stack that uses the coordinates of the
+	 *         full image stack (hence it can be used with the locations stored
+	 *         in the GLFs), or <code>null</code> if no strip was extracted.
+	 */
+	public IntervalView< DoubleType > getStripView() {
+		if ( strip == null ) return null;
+		return Views.translate( strip, stripOffsetX, 0, 0 );
+	}
+
 	// -------------------------------------------------------------------------------------
 	// constructors
 	// -------------------------------------------------------------------------------------
@@ -94,6 +142,100 @@ public class GrowthLine {
 		return this.getFrames().get( i );
 	}
 
+	/**
+	 * Creates the (zero filled) strip stack of this growth line. The strip
+	 * spans all center line points (and their mirrored counterparts) of all
+	 * frames plus <code>margin</code> pixels to the left and to the right,
+	 * clipped to the given image stack. It is up to the caller to fill it via
+	 * <code>getStripView()</code>.
+	 *
+	 * @param img
+	 *            the zero-min 3d image stack (x, y, frames) the strip is a part
+	 *            of.
+	 * @param margin
+	 * @param factory
+	 *            the factory used to create the strip stack.
+	 */
+	public void createStrip( final Interval img, final long margin, final DoubleTypeStackFactory factory ) {
+		long minX = Long.MAX_VALUE;
+		long maxX = Long.MIN_VALUE;
+		for ( final GrowthLineFrame glf : frames ) {
+			final int avgX = glf.getAvgXpos();
+			for ( int i = 0; i < glf.size(); i++ ) {
+				final long x = glf.getX( i );
+				final long mirroredX = 2 * avgX - x;
+				minX = Math.min( minX, Math.min( x, mirroredX ) );
+				maxX = Math.max( maxX, Math.max( x, mirroredX ) );
+			}
+		}
+		if ( minX > maxX ) {
+			// no center line points at all
+			strip = null;
+			return;
+		}
+
+		final long x0 = Math.max( 0, minX - margin );
+		final long x1 = Math.min( img.dimension( 0 ) - 1, maxX + margin );
+		strip = factory.create( new long[] { x1 - x0 + 1, img.dimension( 1 ), img.dimension( 2 ) } );
+		stripOffsetX = x0;
+	}
+
+	/**
+	 * Appends the columns of the given (full width) frame covered by the strip
+	 * stack as new last slice to the strip stack.
+	 *
+	 * @param frame
+	 *            a zero-min 2d frame of the size of the slices of the full
+	 *            image stack.
+	 * @param factory
+	 *            the factory used to create the extended strip stack.
+	 */
+	public void appendToStrip( final RandomAccessibleInterval< DoubleType > frame, final DoubleTypeStackFactory factory ) {
+		if ( strip == null ) return;
+		final RandomAccessibleInterval< DoubleType > columns = Views.zeroMin( Views.interval( frame, new long[] { stripOffsetX, 0 }, new long[] { stripOffsetX + strip.dimension( 0 ) - 1, strip.dimension( 1 ) - 1 } ) );
+		strip = factory.appendSlice( strip, columns );
+	}
+
+	/**
+	 * Computes the gap separation values of all GLFs that do not know them
+	 * yet, from the strip stack.
+	 */
+	public void computeGapSeparationValues() {
+		for ( final GrowthLineFrame glf : frames ) {
+			computeGapSeparationValues( glf );
+		}
+	}
+
+	/**
+	 * Computes the gap separation values of the given GLF (of this growth
+	 * line), if it does not know them yet. The strip data is read directly
+	 * from its storage. Can be called concurrently for different GLFs.
+	 *
+	 * @param glf
+	 */
+	@SuppressWarnings( "unchecked" )
+	public void computeGapSeparationValues( final GrowthLineFrame glf ) {
+		if ( strip == null || glf.getGapSeparationValues( null ) != null ) return;
+		final int width = ( int ) strip.dimension( 0 );
+		final int height = ( int ) strip.dimension( 1 );
+		final int offset = ( int ) ( glf.getZ() * width * height );
+
+		if ( strip instanceof ArrayImg && ( ( ArrayImg< DoubleType, ? > ) strip ).update( null ) instanceof DoubleArray ) {
+			final double[] data = ( ( ArrayImg< DoubleType, DoubleArray > ) strip ).update( null ).getCurrentStorageArray();
+			glf.computeGapSeparationValues( data, offset, width, height, stripOffsetX );
+		} else if ( strip instanceof ArrayImg && ( ( ArrayImg< DoubleType, ? > ) strip ).update( null ) instanceof DoubleAccess ) {
+			// other pixel types: convert the slice of this GLF
+			final DoubleAccess access = ( ( ArrayImg< DoubleType, DoubleAccess > ) strip ).update( null );
+			final double[] slice = new double[ glf.size() > 0 ? width * height : 0 ];
+			for ( int i = 0; i < slice.length; i++ ) {
+				slice[ i ] = access.getValue( offset + i );
+			}
+			glf.computeGapSeparationValues( slice, 0, width, height, stripOffsetX );
+		} else {
+			glf.getGapSeparationValues( getStripView() );
+		}
+	}
+
 	/**
 	 * Builds up the ILP used to find the MAP-mapping.
 	 */
@@ -101,6 +243,17 @@ public class GrowthLine {
 		ilp = new GrowthLineTrackingILP( this );
 	}
 
+	/**
+	 * Builds up the ILP used to find the MAP-mapping using the given gurobi
+	 * environment.
+	 *
+	 * @param env
+	 *            the gurobi environment the new model will be created in.
+	 */
+	public void generateILP( final GRBEnv env ) {
+		ilp = new GrowthLineTrackingILP( this, env );
+	}
+
 	/**
 	 * Runs the ILP.
 	 */
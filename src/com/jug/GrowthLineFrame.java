@@ -4,6 +4,7 @@
 package com.jug;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
@@ -11,25 +12,18 @@ import java.util.PriorityQueue;
 
 import net.imglib2.Point;
 import net.imglib2.RandomAccess;
-import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.RealRandomAccess;
-import net.imglib2.RealRandomAccessible;
+import net.imglib2.RandomAccessible;
 import net.imglib2.algorithm.componenttree.ComponentTree;
 import net.imglib2.algorithm.componenttree.ComponentTreeNode;
-import net.imglib2.algorithm.componenttree.filteredcomponents.FilteredComponentTree;
-import net.imglib2.algorithm.componenttree.filteredcomponents.FilteredComponentTreeNode;
 import net.imglib2.img.Img;
-import net.imglib2.img.array.ArrayImgFactory;
-import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
 import net.imglib2.type.Type;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.view.IntervalView;
-import net.imglib2.view.Views;
 
 import com.jug.util.ArgbDrawingUtils;
-import com.jug.util.SimpleFunctionAnalysis;
-import com.jug.util.Util;
+import com.jug.util.IntervalComponentTree;
+import com.jug.util.TiltedLineKernel;
 
 /**
  * @author jug
@@ -51,12 +45,12 @@ public class GrowthLineFrame {
 		@Override
 		public int compare( final ComponentTreeNode< T, ? > o1, final ComponentTreeNode< T, ? > o2 ) {
 
-			// FilteredComponentTreeNode
-			if ( false || o1 instanceof FilteredComponentTreeNode< ? > && o2 instanceof FilteredComponentTreeNode< ? > ) { // igitt...
-																															// instanceof!
-				final FilteredComponentTreeNode< DoubleType > fc1 = ( FilteredComponentTreeNode< DoubleType > ) o1;
-				final FilteredComponentTreeNode< DoubleType > fc2 = ( FilteredComponentTreeNode< DoubleType > ) o2;
-				return ( int ) ( ( fc1.maxValue().get() - fc1.minValue().get() ) - fc2.maxValue().get() - fc2.minValue().get() ) * -1;
+			// IntervalComponentTree.Node
+			if ( o1 instanceof IntervalComponentTree.Node && o2 instanceof IntervalComponentTree.Node ) {
+				final IntervalComponentTree.Node n1 = ( IntervalComponentTree.Node ) o1;
+				final IntervalComponentTree.Node n2 = ( IntervalComponentTree.Node ) o2;
+				// larger value range (contrast) first
+				return Double.compare( n2.getMaxValue() - n2.getMinValue(), n1.getMaxValue() - n1.getMinValue() );
 			}
 
 			// MSER
@@ -75,14 +69,28 @@ public class GrowthLineFrame {
 		}
 	}
 
+	// -------------------------------------------------------------------------------------
+	// statics
+	// -------------------------------------------------------------------------------------
+	/**
+	 * The 19 tilted lines (of 19 points each) along which the gap separation
+	 * values are averaged.
+	 */
+	private static final TiltedLineKernel GAP_SEPARATION_KERNEL = new TiltedLineKernel( 9, 9 );
+
 	// -------------------------------------------------------------------------------------
 	// private fields
 	// -------------------------------------------------------------------------------------
 	/**
-	 * Points at all the detected GrowthLine centers associated with this
-	 * GrowthLine.
+	 * All the detected GrowthLine centers associated with this GrowthLine,
+	 * stored column-wise: the i-th center is at
+	 * <code>(locationsX[i], locationsY[i], locationZ)</code> (all centers of
+	 * a GrowthLineFrame are in the same frame).
 	 */
-	private List< Point > imgLocations;
+	private int[] locationsX;
+	private int[] locationsY;
+	private long locationZ;
+	private int numLocations;
 	private double[] sepValues; // lazy evaluation -- gets computed when
 								// getGapSeparationValues is called...
 	private GrowthLine parent;
@@ -92,17 +100,22 @@ public class GrowthLineFrame {
 	// setters and getters
 	// -------------------------------------------------------------------------------------
 	/**
-	 * @return the location
+	 * @return the location (a new list, changes are not reflected in this
+	 *         GrowthLineFrame)
 	 */
 	public List< Point > getImgLocations() {
-		return imgLocations;
+		final ArrayList< Point > ret = new ArrayList< Point >( numLocations );
+		for ( int i = 0; i < numLocations; i++ ) {
+			ret.add( getPoint( i ) );
+		}
+		return ret;
 	}
 
 	/**
 	 * @return the location
 	 */
 	public List< Point > getMirroredImgLocations() {
-		return flipAtCenter( imgLocations );
+		return flipAtCenter( getImgLocations() );
 	}
 
 	/**
@@ -110,7 +123,10 @@ public class GrowthLineFrame {
 	 *            the location to set
 	 */
 	public void setImgLocations( final List< Point > locations ) {
-		this.imgLocations = locations;
+		numLocations = 0;
+		for ( final Point p : locations ) {
+			addPoint( p );
+		}
 	}
 
 	/**
@@ -140,7 +156,7 @@ public class GrowthLineFrame {
 	 */
 	public long getOffsetX() {
 //		return getAvgXpos();
-		return getPoint( 0 ).getLongPosition( 0 );
+		return getX( 0 );
 	}
 
 	/**
@@ -162,7 +178,8 @@ public class GrowthLineFrame {
 	// constructors
 	// -------------------------------------------------------------------------------------
 	public GrowthLineFrame() {
-		imgLocations = new ArrayList< Point >();
+		locationsX = new int[ 16 ];
+		locationsY = new int[ 16 ];
 	}
 
 	// -------------------------------------------------------------------------------------
@@ -172,7 +189,7 @@ public class GrowthLineFrame {
 	 * @return the number of points (the length) of this GrowthLine
 	 */
 	public int size() {
-		return imgLocations.size();
+		return numLocations;
 	}
 
 	/**
@@ -185,12 +202,11 @@ public class GrowthLineFrame {
 	 */
 	@SuppressWarnings( "unused" )
 	private double[] getIntensities( final Img< DoubleType > img ) {
-		final double[] ret = new double[ imgLocations.size() ];
+		final double[] ret = new double[ numLocations ];
 		final RandomAccess< DoubleType > ra = img.randomAccess();
-		int i = 0;
-		for ( final Point p : imgLocations ) {
-			ra.setPosition( p );
-			ret[ i++ ] = ra.get().get();
+		for ( int i = 0; i < numLocations; i++ ) {
+			ra.setPosition( new long[] { locationsX[ i ], locationsY[ i ], locationZ } );
+			ret[ i ] = ra.get().get();
 		}
 		return ret;
 	}
@@ -201,7 +217,28 @@ public class GrowthLineFrame {
 	 * @param point
 	 */
 	public void addPoint( final Point point ) {
-		imgLocations.add( point );
+		addPoint( point.getIntPosition( 0 ), point.getIntPosition( 1 ), point.getLongPosition( 2 ) );
+	}
+
+	/**
+	 * Adds a detected center point to a GrowthsLineFrame.
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 *            the frame (must be the same for all points).
+	 */
+	public void addPoint( final int x, final int y, final long z ) {
+		if ( numLocations == 0 ) {
+			locationZ = z;
+		} else if ( z != locationZ ) { throw new IllegalArgumentException( "All center points of a GrowthLineFrame must be in the same frame!" ); }
+		if ( numLocations == locationsX.length ) {
+			locationsX = Arrays.copyOf( locationsX, 2 * numLocations );
+			locationsY = Arrays.copyOf( locationsY, 2 * numLocations );
+		}
+		locationsX[ numLocations ] = x;
+		locationsY[ numLocations ] = y;
+		numLocations++;
 	}
 
 	/**
@@ -211,21 +248,48 @@ public class GrowthLineFrame {
 	 *            - index of the Point to be returned.
 	 */
 	public Point getPoint( final int idx ) {
-		return ( imgLocations.get( idx ) );
+		return new Point( getX( idx ), getY( idx ), locationZ );
+	}
+
+	/**
+	 * @param idx
+	 *            - index of a detected center point.
+	 * @return the x-coordinate of that center point.
+	 */
+	public int getX( final int idx ) {
+		if ( idx >= numLocations ) throw new IndexOutOfBoundsException( "Index: " + idx + ", Size: " + numLocations );
+		return locationsX[ idx ];
+	}
+
+	/**
+	 * @param idx
+	 *            - index of a detected center point.
+	 * @return the y-coordinate of that center point.
+	 */
+	public int getY( final int idx ) {
+		if ( idx >= numLocations ) throw new IndexOutOfBoundsException( "Index: " + idx + ", Size: " + numLocations );
+		return locationsY[ idx ];
+	}
+
+	/**
+	 * @return the z-coordinate (frame) of all center points.
+	 */
+	public long getZ() {
+		return locationZ;
 	}
 
 	/**
 	 * Gets the first detected center point of a GrowthsLine.
 	 */
 	public Point getFirstPoint() {
-		return ( imgLocations.get( 0 ) );
+		return getPoint( 0 );
 	}
 
 	/**
 	 * Gets the last detected center point of a GrowthsLine.
 	 */
 	public Point getLastPoint() {
-		return ( imgLocations.get( imgLocations.size() - 1 ) );
+		return getPoint( numLocations - 1 );
 	}
 
 	/**
@@ -234,19 +298,12 @@ public class GrowthLineFrame {
 	 *
 	 * @param img
 	 */
-	public void generateSegmentationHypotheses( final Img< DoubleType > img ) {
+	public void generateSegmentationHypotheses( final RandomAccessible< DoubleType > img ) {
 
 		final double[] fkt = getGapSeparationValues( img );
 
 		if ( fkt.length > 0 ) {
-			final RandomAccessibleInterval< DoubleType > raiFkt = new ArrayImgFactory< DoubleType >().create( new int[] { fkt.length }, new DoubleType() );
-			final RandomAccess< DoubleType > ra = raiFkt.randomAccess();
-			for ( int i = 0; i < fkt.length; i++ ) {
-				ra.setPosition( i, 0 );
-				ra.get().set( fkt[ i ] );
-			}
-
-			componentTree = FilteredComponentTree.buildComponentTree( raiFkt, new DoubleType(), 3, Long.MAX_VALUE, true );
+			componentTree = IntervalComponentTree.buildComponentTree( fkt, 3 );
 //			componentTree = MserComponentTree.buildMserTree( raiFkt, MotherMachine.MIN_GAP_CONTRAST / 2.0, MotherMachine.MIN_CELL_LENGTH, Long.MAX_VALUE, 0.5, 0.33, true );
 		}
 	}
@@ -291,12 +348,14 @@ public class GrowthLineFrame {
 	 * @param wellPoints
 	 * @return
 	 */
-	public double[] getCenterLineValues( final Img< DoubleType > img ) {
+	public double[] getCenterLineValues( final RandomAccessible< DoubleType > img ) {
 		final RandomAccess< DoubleType > raImg = img.randomAccess();
 
-		final double[] dIntensity = new double[ imgLocations.size() ];
-		for ( int i = 0; i < imgLocations.size(); i++ ) {
-			raImg.setPosition( imgLocations.get( i ) );
+		final double[] dIntensity = new double[ numLocations ];
+		raImg.setPosition( locationZ, 2 );
+		for ( int i = 0; i < numLocations; i++ ) {
+			raImg.setPosition( locationsX[ i ], 0 );
+			raImg.setPosition( locationsY[ i ], 1 );
 			dIntensity[ i ] = raImg.get().get();
 		}
 		return dIntensity;
@@ -307,12 +366,14 @@ public class GrowthLineFrame {
 	 * @param wellPoints
 	 * @return
 	 */
-	public double[] getMirroredCenterLineValues( final Img< DoubleType > img ) {
+	public double[] getMirroredCenterLineValues( final RandomAccessible< DoubleType > img ) {
 		final RandomAccess< DoubleType > raImg = img.randomAccess();
-		final List< Point > mirroredImgLocations = getMirroredImgLocations();
-		final double[] dIntensity = new double[ mirroredImgLocations.size() ];
-		for ( int i = 0; i < mirroredImgLocations.size(); i++ ) {
-			raImg.setPosition( mirroredImgLocations.get( i ) );
+		final int centerInX = getAvgXpos();
+		final double[] dIntensity = new double[ numLocations ];
+		raImg.setPosition( locationZ, 2 );
+		for ( int i = 0; i < numLocations; i++ ) {
+			raImg.setPosition( 2 * centerInX - locationsX[ i ], 0 ); // flip at center
+			raImg.setPosition( locationsY[ i ], 1 );
 			dIntensity[ i ] = raImg.get().get();
 		}
 		return dIntensity;
@@ -325,11 +386,21 @@ public class GrowthLineFrame {
 	 * @param wellPoints
 	 * @return
 	 */
-	public double[] getGapSeparationValues( final Img< DoubleType > img ) {
+	public double[] getGapSeparationValues( final RandomAccessible< DoubleType > img ) {
 		return getGapSeparationValues( img, false );
 	}
 
-	public double[] getGapSeparationValues( final Img< DoubleType > img, final boolean forceRecomputation ) {
+	/**
+	 * Sets precomputed gap separation values (e.g. read from a cache), such
+	 * that <code>getGapSeparationValues</code> does not need any image data.
+	 *
+	 * @param sepValues
+	 */
+	public void setGapSeparationValues( final double[] sepValues ) {
+		this.sepValues = sepValues;
+	}
+
+	public double[] getGapSeparationValues( final RandomAccessible< DoubleType > img, final boolean forceRecomputation ) {
 		if ( sepValues == null ) {
 			if ( img == null ) return null;
 			sepValues = getMaxTiltedLineAveragesInRectangleAlongAvgCenter( img );
@@ -339,53 +410,113 @@ public class GrowthLineFrame {
 
 
 	/**
-	 * Trying to look there a bit smarter... ;)
+	 * Computes the gap separation values of this GLF (if not yet known)
+	 * directly from the frame it lives in, stored row by row in a primitive
+	 * array. Pixels outside the frame are replaced by the closest pixel
+	 * within.
+	 *
+	 * @param data
+	 * @param offset
+	 *            index of pixel (0,0) of the frame in <code>data</code>.
+	 * @param width
+	 * @param height
+	 * @param offsetX
+	 *            the x-coordinate (in the full image) of column 0 of the
+	 *            frame (e.g. the x-offset of a strip).
+	 */
+	public void computeGapSeparationValues( final double[] data, final int offset, final int width, final int height, final long offsetX ) {
+		if ( sepValues != null ) return;
+		// special case: growth line does not exist in this frame
+		if ( numLocations == 0 ) {
+			sepValues = new double[ 0 ];
+			return;
+		}
+
+		final int r = GAP_SEPARATION_KERNEL.getRadiusX();
+		final int centerX = ( int ) ( getAvgXpos() - offsetX );
+		final int y1 = getMinY() + GAP_SEPARATION_KERNEL.getMinDy();
+		final int y2 = getMaxY() + GAP_SEPARATION_KERNEL.getMaxDy();
+		if ( centerX - r >= 0 && centerX + r < width && y1 >= 0 && y2 < height ) {
+			sepValues = applyGapSeparationKernel( data, offset + centerX, width, 0 );
+		} else {
+			final int windowWidth = 2 * r + 1;
+			final double[] window = new double[ windowWidth * ( y2 - y1 + 1 ) ];
+			for ( int y = y1; y <= y2; y++ ) {
+				final int row = offset + Math.max( 0, Math.min( height - 1, y ) ) * width;
+				for ( int i = 0; i < windowWidth; i++ ) {
+					window[ ( y - y1 ) * windowWidth + i ] = data[ row + Math.max( 0, Math.min( width - 1, centerX - r + i ) ) ];
+				}
+			}
+			sepValues = applyGapSeparationKernel( window, r, windowWidth, -y1 );
+		}
+	}
+
+	/**
+	 * For each center line point: the maximal average intensity along all
+	 * tilted lines (see <code>GAP_SEPARATION_KERNEL</code>) through the point
+	 * (shifted to the average x-position of the center line).
 	 *
 	 * @param img
-	 * @param wellPoints
 	 * @return
 	 */
-	private double[] getMaxTiltedLineAveragesInRectangleAlongAvgCenter( final Img< DoubleType > img ) {
+	private double[] getMaxTiltedLineAveragesInRectangleAlongAvgCenter( final RandomAccessible< DoubleType > img ) {
 		// special case: growth line does not exist in this frame
-		if ( imgLocations.size() == 0 ) return new double[ 0 ];
-
-		final int centerX = getAvgXpos();
-		final int centerZ = imgLocations.get( 0 ).getIntPosition( 2 );
-		final int maxOffsetX = 9;
-		final int maxOffsetY = 9;
-
-		final RealRandomAccessible< DoubleType > rrImg = Views.interpolate( Views.hyperSlice( img, 2, centerZ ), new NLinearInterpolatorFactory< DoubleType >() );
-		final RealRandomAccess< DoubleType > rraImg = rrImg.realRandomAccess();
-
-		final double[] dIntensity = new double[ imgLocations.size() ]; //  + 1
-		for ( int i = 0; i < imgLocations.size(); i++ ) {
-			final int centerY = imgLocations.get( i ).getIntPosition( 1 );
-
-			int nextAverageIdx = 0;
-			final double[] diagonalAverages = new double[ maxOffsetY * 2 + 1 ];
-			for ( int currentOffsetY = -maxOffsetY; currentOffsetY <= maxOffsetY; currentOffsetY++ ) {
-				double summedIntensities = 0;
-				int summands = 0;
-				for ( int currentOffsetX = -maxOffsetX; currentOffsetX <= maxOffsetX; currentOffsetX++ ) {
-					final double x = centerX + currentOffsetX;
-					final double y = centerY + ( ( double ) currentOffsetY / maxOffsetX ) * currentOffsetX;
-					rraImg.setPosition( new double[] { x, y } );
-					summedIntensities += rraImg.get().get();
-					summands++;
-				}
-				diagonalAverages[ nextAverageIdx ] = summedIntensities / summands;
-				nextAverageIdx++;
+		if ( numLocations == 0 ) return new double[ 0 ];
+
+		// read the rectangle along the center line once
+		final int r = GAP_SEPARATION_KERNEL.getRadiusX();
+		final int x1 = getAvgXpos() - r;
+		final int y1 = getMinY() + GAP_SEPARATION_KERNEL.getMinDy();
+		final int y2 = getMaxY() + GAP_SEPARATION_KERNEL.getMaxDy();
+		final int windowWidth = 2 * r + 1;
+		final double[] window = new double[ windowWidth * ( y2 - y1 + 1 ) ];
+		final RandomAccess< DoubleType > raImg = img.randomAccess();
+		raImg.setPosition( locationZ, 2 );
+		for ( int y = y1; y <= y2; y++ ) {
+			raImg.setPosition( y, 1 );
+			for ( int i = 0; i < windowWidth; i++ ) {
+				raImg.setPosition( x1 + i, 0 );
+				window[ ( y - y1 ) * windowWidth + i ] = raImg.get().get();
 			}
-			final double maxDiagonalAvg = SimpleFunctionAnalysis.getMax( diagonalAverages ).b.doubleValue();
+		}
+		return applyGapSeparationKernel( window, r, windowWidth, -y1 );
+	}
 
-			// dIntensity[i] = maxDiagonalAvg - totalAverageIntensity;
-			// dIntensity[i] = maxDiagonalAvg - minIntensity;
-			dIntensity[ i ] = maxDiagonalAvg;
+	/**
+	 * @param data
+	 *            image data, stored row by row.
+	 * @param centerX
+	 *            index of the pixel in row 0 of <code>data</code> the center
+	 *            line is (horizontally) centered at.
+	 * @param width
+	 * @param shiftY
+	 *            added to the y-coordinates of all center line points to
+	 *            obtain their row in <code>data</code>.
+	 * @return the maximal tilted line average of each center line point.
+	 */
+	private double[] applyGapSeparationKernel( final double[] data, final int centerX, final int width, final int shiftY ) {
+		final int[] tapOffsets = GAP_SEPARATION_KERNEL.getTapOffsets( width );
+		final double[] dIntensity = new double[ numLocations ];
+		for ( int i = 0; i < numLocations; i++ ) {
+			dIntensity[ i ] = GAP_SEPARATION_KERNEL.getMaxLineAverage( data, centerX + ( locationsY[ i ] + shiftY ) * width, tapOffsets );
 		}
+		return dIntensity;
+	}
 
-//		dIntensity = SimpleFunctionAnalysis.normalizeDoubleArray( dIntensity, 0.0, 1.0 );
+	private int getMinY() {
+		int min = Integer.MAX_VALUE;
+		for ( int i = 0; i < numLocations; i++ ) {
+			min = Math.min( min, locationsY[ i ] );
+		}
+		return min;
+	}
 
-		return dIntensity;
+	private int getMaxY() {
+		int max = Integer.MIN_VALUE;
+		for ( int i = 0; i < numLocations; i++ ) {
+			max = Math.max( max, locationsY[ i ] );
+		}
+		return max;
 	}
 
 	/**
@@ -419,11 +550,9 @@ public class GrowthLineFrame {
 			offsetY = view.min( 1 );
 		}
 
-		for ( final Point p : getMirroredImgLocations() ) { // imgLocations
-			final long[] pos = Util.pointLocation( p );
-			pos[ 0 ] += offsetX;
-			pos[ 1 ] += offsetY;
-			raAnnotationImg.setPosition( pos );
+		final int centerInX = getAvgXpos();
+		for ( int i = 0; i < numLocations; i++ ) { // mirrored locations
+			raAnnotationImg.setPosition( new long[] { 2 * centerInX - locationsX[ i ] + offsetX, locationsY[ i ] + offsetY, locationZ } );
 			raAnnotationImg.get().set( new ARGBType( ARGBType.rgba( 0, 255, 0, 255 ) ) );
 		}
 	}
@@ -478,11 +607,11 @@ public class GrowthLineFrame {
 	 */
 	public int getAvgXpos() {
 		int avg = 0;
-		for ( final Point p : imgLocations ) {
-			avg += p.getIntPosition( 0 );
+		for ( int i = 0; i < numLocations; i++ ) {
+			avg += locationsX[ i ];
 		}
-		if ( imgLocations.size() == 0 ) { return -1; }
-		return avg / imgLocations.size();
+		if ( numLocations == 0 ) { return -1; }
+		return avg / numLocations;
 	}
 
 	/**
@@ -4,6 +4,7 @@ package com.jug;
  * Main class for the MotherMachine project.
  */
 
+import gurobi.GRBException;
 import ij.ImageJ;
 
 import java.awt.DisplayMode;
@@ -18,10 +19,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import javax.swing.BorderFactory;
 import javax.swing.JFileChooser;
@@ -33,15 +39,17 @@ import javax.swing.SwingUtilities;
 import javax.swing.filechooser.FileFilter;
 
 import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
 import net.imglib2.Point;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealRandomAccessible;
 import net.imglib2.algorithm.gauss3.Gauss3;
-import net.imglib2.algorithm.stats.Normalize;
 import net.imglib2.exception.IncompatibleTypeException;
 import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.img.display.imagej.ImageJFunctions;
+import net.imglib2.img.planar.PlanarImgFactory;
 import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
 import net.imglib2.realtransform.AffineTransform2D;
 import net.imglib2.realtransform.RealViews;
@@ -56,12 +64,20 @@ import com.jug.gui.JFrameSnapper;
 import com.jug.gui.MotherMachineGui;
 import com.jug.gui.MotherMachineModel;
 import com.jug.loops.Loops;
+import com.jug.loops.ParallelLoops;
 import com.jug.lp.GrowthLineTrackingILP;
-import com.jug.ops.cursor.FindLocalMaxima;
+import com.jug.lp.GrowthLineTrackingILPScheduler;
 import com.jug.ops.cursor.FindLocationAboveThreshold;
-import com.jug.ops.numerictype.VarOfRai;
+import com.jug.ops.rai.RaiRowStatistics;
+import com.jug.util.BackgroundSubtractor;
 import com.jug.util.DataMover;
 import com.jug.util.DoubleTypeImgLoader;
+import com.jug.util.DoubleTypeStackFactory;
+import com.jug.util.PipelineMetrics;
+import com.jug.util.RowMaxima;
+import com.jug.util.SeparableGaussian2D;
+import com.jug.util.StageCache;
+import com.jug.util.StraighteningTable;
 
 
 /**
@@ -100,6 +116,18 @@ public class MotherMachine {
 	 * of from bottom.
 	 */
 	public static int GL_OFFSET_BOTTOM = 10;
+	/**
+	 * If true, wells are detected only once, on the temporal mean projection
+	 * of all frames, and per frame only the horizontal drift of the wells is
+	 * estimated (see <code>WellPositionModel</code>). If false, well centers
+	 * are detected in each row of each frame.
+	 */
+	public static boolean TEMPORAL_WELL_MODEL = false;
+	/**
+	 * Maximal horizontal drift (in pixels) of a frame with respect to the
+	 * temporal mean projection (only used if TEMPORAL_WELL_MODEL is true).
+	 */
+	public static int WELL_MODEL_MAX_DRIFT = 10;
 	/**
 	 * Maximum offset in x direction (with respect to growth line center) to
 	 * take the background intensities from that will be subtracted from the
@@ -117,6 +145,12 @@ public class MotherMachine {
 	 * measured background values will be subtracted from.
 	 */
 	private static int BGREM_X_OFFSET = 35;
+	/**
+	 * Minimal number of pixels kept left and right of a growth line when
+	 * extracting its strip stack (gap separation looks up to 9 pixels to both
+	 * sides, plus one for interpolation).
+	 */
+	private static final int STRIP_MIN_MARGIN = 10;
 	/**
 	 * Prior knowledge: minimal length of detected cells
 	 */
@@ -125,6 +159,63 @@ public class MotherMachine {
 	 * Prior knowledge: minimal contrast of an gap (also used for MSERs)
 	 */
 	public static double MIN_GAP_CONTRAST = 0.02; // This is set to a very low value that will basically not filter anything...
+	/**
+	 * Total number of threads gurobi may use while the ILPs of all growth lines
+	 * are built and solved concurrently.
+	 */
+	public static int ILP_THREAD_BUDGET = Runtime.getRuntime().availableProcessors();
+	/**
+	 * Number of threads used by parallelized preprocessing steps (e.g. tiff
+	 * decoding and straightening).
+	 */
+	public static int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+	/**
+	 * If true, tiffs are loaded, straightened and cropped one frame at a time
+	 * instead of materializing the whole stack after each of those steps.
+	 */
+	public static boolean STREAMING_PREPROCESSING = false;
+	/**
+	 * If true, the straightening geometry is computed once (see
+	 * <code>StraighteningTable</code>) and applied to all frames, instead of
+	 * interpolating each frame through a transformed view.
+	 */
+	public static boolean FAST_STRAIGHTENING = true;
+	/**
+	 * If true (and not streaming), straightening transform and ROI are
+	 * estimated from the first and last frame only and all frames are
+	 * straightened directly into the cropped stack (no intermediate
+	 * straightened stack).
+	 */
+	public static boolean FUSED_STRAIGHTEN_AND_CROP = true;
+	/**
+	 * Storage used for the pixels of the (large) raw and temp image stacks:
+	 * "double", "float", or "uint16" (see <code>DoubleTypeStackFactory</code>).
+	 */
+	public static String PIXEL_TYPE = DoubleTypeStackFactory.PIXEL_TYPE_DOUBLE;
+	/**
+	 * Where the raw and temp image stacks are kept: "heap", or "mapped" (one
+	 * memory-mapped file region per frame in STORAGE_PATH, for stacks larger
+	 * than the heap; see <code>DoubleTypeStackFactory</code>).
+	 */
+	public static String STORAGE_MODE = DoubleTypeStackFactory.STORAGE_MODE_HEAP;
+	public static String STORAGE_PATH = System.getProperty( "java.io.tmpdir" );
+	/**
+	 * If true, preprocessed images, detected growth lines and gap separation
+	 * values are cached on disk (in STAGE_CACHE_PATH) and reused by later runs
+	 * on the same data with the same parameters.
+	 */
+	public static boolean STAGE_CACHE_ENABLED = false;
+	public static String STAGE_CACHE_PATH = System.getProperty( "user.home" ) + File.separator + ".mothermachine" + File.separator + "cache";
+	/**
+	 * Maximal number of positions processed concurrently in batch mode (see
+	 * <code>MotherMachineBatch</code>). NUM_THREADS and ILP_THREAD_BUDGET are
+	 * split evenly among those positions.
+	 */
+	public static int BATCH_MAX_PARALLEL_POSITIONS = Math.max( 1, Runtime.getRuntime().availableProcessors() / 2 );
+	/**
+	 * True if running without any GUI (see <code>runHeadless</code>).
+	 */
+	public static boolean HEADLESS = false;
 
 	// - - - - - - - - - - - - - -
 	// GUI-WINDOW RELATED STATICS
@@ -190,6 +281,19 @@ public class MotherMachine {
 	 *            muh!
 	 */
 	public static void main( final String[] args ) {
+		if ( args.length > 0 && args[ 0 ].equals( "-headless" ) ) {
+			runHeadless( args );
+			return;
+		}
+		if ( args.length > 0 && args[ 0 ].equals( "-batch" ) ) {
+			MotherMachineBatch.run( args );
+			return;
+		}
+		if ( args.length > 0 && args[ 0 ].equals( "-watch" ) ) {
+			MotherMachineWatch.run( args );
+			return;
+		}
+
 		try {
 
 			final MotherMachine main = new MotherMachine();
@@ -197,25 +301,8 @@ public class MotherMachine {
 			main.initMainWindow( guiFrame );
 
 			props = main.loadParams();
-			BGREM_TEMPLATE_XMIN = Integer.parseInt( props.getProperty( "BGREM_TEMPLATE_XMIN", Integer.toString( BGREM_TEMPLATE_XMIN ) ) );
-			BGREM_TEMPLATE_XMAX = Integer.parseInt( props.getProperty( "BGREM_TEMPLATE_XMAX", Integer.toString( BGREM_TEMPLATE_XMAX ) ) );
-			BGREM_X_OFFSET = Integer.parseInt( props.getProperty( "BGREM_X_OFFSET", Integer.toString( BGREM_X_OFFSET ) ) );
-			GL_OFFSET_BOTTOM = Integer.parseInt( props.getProperty( "GL_OFFSET_BOTTOM", Integer.toString( GL_OFFSET_BOTTOM ) ) );
-			GL_OFFSET_TOP = Integer.parseInt( props.getProperty( "GL_OFFSET_TOP", Integer.toString( GL_OFFSET_TOP ) ) );
-			GL_OFFSET_LATERAL = Integer.parseInt( props.getProperty( "GL_OFFSET_LATERAL", Integer.toString( GL_OFFSET_LATERAL ) ) );
-			MIN_CELL_LENGTH = Integer.parseInt( props.getProperty( "MIN_CELL_LENGTH", Integer.toString( MIN_CELL_LENGTH ) ) );
-			MIN_GAP_CONTRAST = Double.parseDouble( props.getProperty( "MIN_GAP_CONTRAST", Double.toString( MIN_GAP_CONTRAST ) ) );
-			SIGMA_PRE_SEGMENTATION_X = Double.parseDouble( props.getProperty( "SIGMA_PRE_SEGMENTATION_X", Double.toString( SIGMA_PRE_SEGMENTATION_X ) ) );
-			SIGMA_PRE_SEGMENTATION_Y = Double.parseDouble( props.getProperty( "SIGMA_PRE_SEGMENTATION_Y", Double.toString( SIGMA_PRE_SEGMENTATION_Y ) ) );
-			SIGMA_GL_DETECTION_X = Double.parseDouble( props.getProperty( "SIGMA_GL_DETECTION_X", Double.toString( SIGMA_GL_DETECTION_X ) ) );
-			SIGMA_GL_DETECTION_Y = Double.parseDouble( props.getProperty( "SIGMA_GL_DETECTION_Y", Double.toString( SIGMA_GL_DETECTION_Y ) ) );
-			DEFAULT_PATH = props.getProperty( "DEFAULT_PATH", DEFAULT_PATH );
-
-			GUI_POS_X = Integer.parseInt( props.getProperty( "GUI_POS_X", Integer.toString( DEFAULT_GUI_POS_X ) ) );
-			GUI_POS_Y = Integer.parseInt( props.getProperty( "GUI_POS_Y", Integer.toString( DEFAULT_GUI_POS_X ) ) );
-			GUI_WIDTH = Integer.parseInt( props.getProperty( "GUI_WIDTH", Integer.toString( GUI_WIDTH ) ) );
-			GUI_HEIGHT = Integer.parseInt( props.getProperty( "GUI_HEIGHT", Integer.toString( GUI_HEIGHT ) ) );
-			GUI_CONSOLE_WIDTH = Integer.parseInt( props.getProperty( "GUI_CONSOLE_WIDTH", Integer.toString( GUI_CONSOLE_WIDTH ) ) );
+			parseParams( props );
+
 			// Iterate over all currently attached monitors and check if sceen position is actually possible,
 			// otherwise fall back to the DEFAULT values and ignore the ones coming from the properties-file.
 			boolean pos_ok = false;
@@ -247,12 +334,12 @@ public class MotherMachine {
 
 			// ---------------------------------------------------
 			main.processDataFromFolder( path );
+			main.getMetrics().printSummary( System.out );
 			// ---------------------------------------------------
 
 			System.out.print( "Build and show GUI..." );
 			// show loaded and annotated data
 			ImageJFunctions.show( main.imgRaw, "Rotated & cropped raw data" );
-			ImageJFunctions.show( main.imgTemp, "Temporary" );
 			ImageJFunctions.show( main.imgAnnotated, "Annotated ARGB data" );
 
 			final MotherMachineGui gui = new MotherMachineGui( new MotherMachineModel( main ) );
@@ -281,9 +368,181 @@ public class MotherMachine {
 					"Please visit 'www.gurobi.com' for further information.\n\n" +
 					ulr.getMessage(),
 					"Gurobi Error?", JOptionPane.ERROR_MESSAGE );
+		}		catch ( final Exception e ) {
+			e.printStackTrace();
+			JOptionPane.showMessageDialog( MotherMachine.guiFrame,
+					"Processing of the selected folder failed.\n\n" +
+					e.getMessage(),
+					"Processing Error", JOptionPane.ERROR_MESSAGE );
+		}
+	}
+
+	/**
+	 * Runs the entire pipeline (loading, preprocessing, growth line detection,
+	 * segmentation hypotheses, ILP build and solve, CSV export) without
+	 * creating any GUI elements. This can be used on machines without any
+	 * display (e.g. cluster nodes).
+	 *
+	 * Usage: <code>-headless &lt;tiff-folder&gt; [&lt;csv-file&gt;]</code>
+	 * If no csv-file is given, the cell counts will be written to
+	 * 'MotherMachineCellCounts.csv' inside the given tiff-folder.
+	 *
+	 * @param args
+	 *            the command line arguments (args[0] is '-headless').
+	 */
+	private static void runHeadless( final String[] args ) {
+		if ( args.length < 2 ) {
+			System.err.println( "Usage: MotherMachine -headless <tiff-folder> [<csv-file>]" );
+			System.exit( 1 );
+		}
+		final String path = new File( args[ 1 ] ).getAbsolutePath();
+		final File csvFile = ( args.length > 2 ) ? new File( args[ 2 ] ) : new File( path, "MotherMachineCellCounts.csv" );
+
+		try {
+			initHeadless();
+
+			// ---------------------------------------------------
+			final MotherMachine main = new MotherMachine();
+			main.processAndExport( path, csvFile, ILP_THREAD_BUDGET );
+			main.disposeILPs();
+			// ---------------------------------------------------
+
+			main.getMetrics().printSummary( System.out );
+		}
+		catch ( final UnsatisfiedLinkError ulr ) {
+			System.err.println( "Could not initialize Gurobi.\n" +
+					"You might not have installed Gurobi properly or you miss a valid license.\n" +
+					"Please visit 'www.gurobi.com' for further information.\n\n" +
+					ulr.getMessage() );
+			System.exit( 1 );
+		}
+		catch ( final IOException e ) {
+			System.err.println( "Results could not be written to '" + csvFile.getAbsolutePath() + "'!" );
+			e.printStackTrace();
+			System.exit( 1 );
+		}		catch ( final Exception e ) {
+			System.err.println( "Processing of '" + path + "' failed!" );
+			e.printStackTrace();
+			System.exit( 1 );
 		}
 	}
 
+	/**
+	 * Prepares running without GUI: sets AWT to headless and loads all
+	 * parameters from 'mm.properties'.
+	 */
+	static void initHeadless() {
+		System.setProperty( "java.awt.headless", "true" );
+		HEADLESS = true;
+
+		props = new MotherMachine().loadParams();
+		parseParams( props );
+	}
+
+	/**
+	 * Runs the entire pipeline on the given folder without any GUI and writes
+	 * the cell counts into <code>csvFile</code>. Pipeline metrics are written
+	 * next to it ('&lt;csv-file&gt;_metrics.{csv,json}'), as well as the
+	 * gurobi logs. The ILPs stay alive until <code>disposeILPs</code> is
+	 * called.
+	 *
+	 * @param path
+	 *            the folder containing the tiff sequence to be processed.
+	 * @param csvFile
+	 *            the file the cell counts are written to.
+	 * @param ilpThreadBudget
+	 *            total number of gurobi threads the ILPs of this dataset may
+	 *            use.
+	 * @return the total cell count (as exported).
+	 * @throws Exception
+	 *             if processing the folder or writing the exports fails.
+	 */
+	public int processAndExport( final String path, final File csvFile, final int ilpThreadBudget ) throws Exception {
+		processDataFromFolder( path );
+
+		System.out.println( "Generating and running Integer Linear Programs..." );
+		generateAndRunILPs( ilpThreadBudget, csvFile.getAbsoluteFile().getParentFile() );
+		System.out.println( " done!" );
+
+		System.out.print( "Exporting cell counts to '" + csvFile.getAbsolutePath() + "'..." );
+		final int totalCellCount = exportCellCounts( csvFile );
+		System.out.println( " done!" );
+
+		exportMetrics( getMetricsBaseName( csvFile ) );
+
+		return totalCellCount;
+	}
+
+	/**
+	 * @param csvFile
+	 *            a file cell counts are written to.
+	 * @return the base name of the metrics files belonging to the given cell
+	 *         count file ('&lt;csv-file&gt;_metrics').
+	 */
+	public static String getMetricsBaseName( final File csvFile ) {
+		return csvFile.getAbsolutePath().replaceFirst( "\\.[cC][sS][vV]$", "" ) + "_metrics";
+	}
+
+	/**
+	 * Writes all pipeline metrics recorded so far into
+	 * '&lt;metricsBaseName&gt;.{csv,json}'.
+	 *
+	 * @param metricsBaseName
+	 *            path of the metrics files without extension (see
+	 *            <code>getMetricsBaseName</code>).
+	 * @throws IOException
+	 */
+	public void exportMetrics( final String metricsBaseName ) throws IOException {
+		System.out.print( "Exporting pipeline metrics to '" + metricsBaseName + ".{csv,json}'..." );
+		getMetrics().writeCsv( new File( metricsBaseName + ".csv" ) );
+		getMetrics().writeJson( new File( metricsBaseName + ".json" ) );
+		System.out.println( " done!" );
+	}
+
+	/**
+	 * Reads all MotherMachine parameters from the given <code>Properties</code>
+	 * into the corresponding statics. Values not contained in
+	 * <code>props</code> keep their current (default) values.
+	 *
+	 * @param props
+	 *            an instance of {@link Properties} as returned by
+	 *            <code>loadParams()</code>.
+	 */
+	private static void parseParams( final Properties props ) {
+		BGREM_TEMPLATE_XMIN = Integer.parseInt( props.getProperty( "BGREM_TEMPLATE_XMIN", Integer.toString( BGREM_TEMPLATE_XMIN ) ) );
+		BGREM_TEMPLATE_XMAX = Integer.parseInt( props.getProperty( "BGREM_TEMPLATE_XMAX", Integer.toString( BGREM_TEMPLATE_XMAX ) ) );
+		BGREM_X_OFFSET = Integer.parseInt( props.getProperty( "BGREM_X_OFFSET", Integer.toString( BGREM_X_OFFSET ) ) );
+		GL_OFFSET_BOTTOM = Integer.parseInt( props.getProperty( "GL_OFFSET_BOTTOM", Integer.toString( GL_OFFSET_BOTTOM ) ) );
+		GL_OFFSET_TOP = Integer.parseInt( props.getProperty( "GL_OFFSET_TOP", Integer.toString( GL_OFFSET_TOP ) ) );
+		GL_OFFSET_LATERAL = Integer.parseInt( props.getProperty( "GL_OFFSET_LATERAL", Integer.toString( GL_OFFSET_LATERAL ) ) );
+		TEMPORAL_WELL_MODEL = Boolean.parseBoolean( props.getProperty( "TEMPORAL_WELL_MODEL", Boolean.toString( TEMPORAL_WELL_MODEL ) ) );
+		WELL_MODEL_MAX_DRIFT = Integer.parseInt( props.getProperty( "WELL_MODEL_MAX_DRIFT", Integer.toString( WELL_MODEL_MAX_DRIFT ) ) );
+		MIN_CELL_LENGTH = Integer.parseInt( props.getProperty( "MIN_CELL_LENGTH", Integer.toString( MIN_CELL_LENGTH ) ) );
+		MIN_GAP_CONTRAST = Double.parseDouble( props.getProperty( "MIN_GAP_CONTRAST", Double.toString( MIN_GAP_CONTRAST ) ) );
+		SIGMA_PRE_SEGMENTATION_X = Double.parseDouble( props.getProperty( "SIGMA_PRE_SEGMENTATION_X", Double.toString( SIGMA_PRE_SEGMENTATION_X ) ) );
+		SIGMA_PRE_SEGMENTATION_Y = Double.parseDouble( props.getProperty( "SIGMA_PRE_SEGMENTATION_Y", Double.toString( SIGMA_PRE_SEGMENTATION_Y ) ) );
+		SIGMA_GL_DETECTION_X = Double.parseDouble( props.getProperty( "SIGMA_GL_DETECTION_X", Double.toString( SIGMA_GL_DETECTION_X ) ) );
+		SIGMA_GL_DETECTION_Y = Double.parseDouble( props.getProperty( "SIGMA_GL_DETECTION_Y", Double.toString( SIGMA_GL_DETECTION_Y ) ) );
+		ILP_THREAD_BUDGET = Integer.parseInt( props.getProperty( "ILP_THREAD_BUDGET", Integer.toString( ILP_THREAD_BUDGET ) ) );
+		NUM_THREADS = Integer.parseInt( props.getProperty( "NUM_THREADS", Integer.toString( NUM_THREADS ) ) );
+		STREAMING_PREPROCESSING = Boolean.parseBoolean( props.getProperty( "STREAMING_PREPROCESSING", Boolean.toString( STREAMING_PREPROCESSING ) ) );
+		FAST_STRAIGHTENING = Boolean.parseBoolean( props.getProperty( "FAST_STRAIGHTENING", Boolean.toString( FAST_STRAIGHTENING ) ) );
+		FUSED_STRAIGHTEN_AND_CROP = Boolean.parseBoolean( props.getProperty( "FUSED_STRAIGHTEN_AND_CROP", Boolean.toString( FUSED_STRAIGHTEN_AND_CROP ) ) );
+		PIXEL_TYPE = props.getProperty( "PIXEL_TYPE", PIXEL_TYPE );
+		STORAGE_MODE = props.getProperty( "STORAGE_MODE", STORAGE_MODE );
+		STORAGE_PATH = props.getProperty( "STORAGE_PATH", STORAGE_PATH );
+		STAGE_CACHE_ENABLED = Boolean.parseBoolean( props.getProperty( "STAGE_CACHE_ENABLED", Boolean.toString( STAGE_CACHE_ENABLED ) ) );
+		STAGE_CACHE_PATH = props.getProperty( "STAGE_CACHE_PATH", STAGE_CACHE_PATH );
+		BATCH_MAX_PARALLEL_POSITIONS = Integer.parseInt( props.getProperty( "BATCH_MAX_PARALLEL_POSITIONS", Integer.toString( BATCH_MAX_PARALLEL_POSITIONS ) ) );
+		DEFAULT_PATH = props.getProperty( "DEFAULT_PATH", DEFAULT_PATH );
+
+		GUI_POS_X = Integer.parseInt( props.getProperty( "GUI_POS_X", Integer.toString( DEFAULT_GUI_POS_X ) ) );
+		GUI_POS_Y = Integer.parseInt( props.getProperty( "GUI_POS_Y", Integer.toString( DEFAULT_GUI_POS_X ) ) );
+		GUI_WIDTH = Integer.parseInt( props.getProperty( "GUI_WIDTH", Integer.toString( GUI_WIDTH ) ) );
+		GUI_HEIGHT = Integer.parseInt( props.getProperty( "GUI_HEIGHT", Integer.toString( GUI_HEIGHT ) ) );
+		GUI_CONSOLE_WIDTH = Integer.parseInt( props.getProperty( "GUI_CONSOLE_WIDTH", Integer.toString( GUI_CONSOLE_WIDTH ) ) );
+	}
+
 	// -------------------------------------------------------------------------------------
 	// fields
 	// -------------------------------------------------------------------------------------
@@ -295,30 +554,75 @@ public class MotherMachine {
 
 	private double dCorrectedSlope;
 
+	/**
+	 * Affine transform used to straighten each frame and the interval (in
+	 * transformed coordinates) that is kept of each straightened frame.
+	 */
+	private AffineTransform2D straighteningTransform;
+	private StraighteningTable straighteningTable;
+	private StraighteningTable croppedStraighteningTable;
+	private long[] straightenedMin;
+	private long[] straightenedMax;
+	private long[] straighteningSourceDims;
+
+	/**
+	 * The ROI within the straightened frames: <code>{left, top, right,
+	 * bottom}</code>.
+	 */
+	private long[] roi;
+
+	/**
+	 * Timing and resource metrics of all processing stages.
+	 */
+	private final PipelineMetrics metrics = new PipelineMetrics();
+
 	private Img< DoubleType > imgRaw;
-	private Img< DoubleType > imgTemp;
 	private Img< ARGBType > imgAnnotated;
 
+	/**
+	 * Size of the preprocessed (straightened and cropped) frames and number
+	 * of frames processed so far. Kept separately since the full image stacks
+	 * are released once each growth line got its strip stack.
+	 */
+	private long[] frameDims;
+	private long numFrames;
+
 	/**
 	 * Contains all detected growth line center points.
 	 * The structure goes in line with image data:
-	 * Outermost list: one element per frame (image in stack).
-	 * 2nd list: one element per detected growth-line.
-	 * 3rd list: one element (Point) per location downwards along the growth
-	 * line.
+	 * one element per frame (image in stack), containing the x-positions of
+	 * all well centers found in each row of that frame.
 	 */
-	private List< List< List< Point >>> glCenterPoints;
+	private List< RowMaxima > glCenterPoints;
 
 	/**
 	 * Contains all GrowthLines found in the given data.
 	 */
 	private List< GrowthLine > growthLines;
 
+	/**
+	 * The GLFs of the frame containing the most growth lines. GLFs of all
+	 * other frames are sorted into the growth lines relative to those.
+	 */
+	private List< GrowthLineFrame > referenceGrowthLineFrames;
+
+	/**
+	 * The well positions found by <code>findGrowthLinesWithWellModel</code>
+	 * (null if growth lines were detected frame by frame).
+	 */
+	private WellPositionModel wellModel;
+
 	/**
 	 * All ILP-related structures are within mmILP.
 	 */
 	private GrowthLineTrackingILP mmILP;
 
+	/**
+	 * Builds and runs the ILPs of all growth lines and owns the gurobi
+	 * environments they live in (see <code>getIlpScheduler</code>).
+	 */
+	private GrowthLineTrackingILPScheduler ilpScheduler;
+
 	/**
 	 * Frame hosting the console output.
 	 */
@@ -331,6 +635,35 @@ public class MotherMachine {
 	// -------------------------------------------------------------------------------------
 	// setters and getters
 	// -------------------------------------------------------------------------------------
+	/**
+	 * @return the metrics collected for all processing stages
+	 */
+	public PipelineMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the scheduler all ILPs of this instance are built and run with
+	 *         (created with ILP_THREAD_BUDGET if no ILP was built so far).
+	 */
+	public synchronized GrowthLineTrackingILPScheduler getIlpScheduler() {
+		if ( ilpScheduler == null ) {
+			ilpScheduler = new GrowthLineTrackingILPScheduler( ILP_THREAD_BUDGET, metrics, null );
+		}
+		return ilpScheduler;
+	}
+
+	/**
+	 * Releases all ILPs (and their gurobi environments). The ILPs of the
+	 * growth lines must not be used afterwards.
+	 */
+	public synchronized void disposeILPs() {
+		if ( ilpScheduler != null ) {
+			ilpScheduler.dispose();
+			ilpScheduler = null;
+		}
+	}
+
 	/**
 	 * @return the imgRaw
 	 */
@@ -347,18 +680,10 @@ public class MotherMachine {
 	}
 
 	/**
-	 * @return the imgTemp
-	 */
-	public Img< DoubleType > getImgTemp() {
-		return imgTemp;
-	}
-
-	/**
-	 * @param imgTemp
-	 *            the imgTemp to set
+	 * @return the number of frames processed so far
 	 */
-	public void setImgTemp( final Img< DoubleType > imgTemp ) {
-		this.imgTemp = imgTemp;
+	public long getNumFrames() {
+		return numFrames;
 	}
 
 	/**
@@ -629,12 +954,25 @@ public class MotherMachine {
 			props.setProperty( "GL_OFFSET_BOTTOM", Integer.toString( GL_OFFSET_BOTTOM ) );
 			props.setProperty( "GL_OFFSET_TOP", Integer.toString( GL_OFFSET_TOP ) );
 			props.setProperty( "GL_OFFSET_LATERAL", Integer.toString( GL_OFFSET_LATERAL ) );
+			props.setProperty( "TEMPORAL_WELL_MODEL", Boolean.toString( TEMPORAL_WELL_MODEL ) );
+			props.setProperty( "WELL_MODEL_MAX_DRIFT", Integer.toString( WELL_MODEL_MAX_DRIFT ) );
 			props.setProperty( "MIN_CELL_LENGTH", Integer.toString( MIN_CELL_LENGTH ) );
 			props.setProperty( "MIN_GAP_CONTRAST", Double.toString( MIN_GAP_CONTRAST ) );
 			props.setProperty( "SIGMA_PRE_SEGMENTATION_X", Double.toString( SIGMA_PRE_SEGMENTATION_X ) );
 			props.setProperty( "SIGMA_PRE_SEGMENTATION_Y", Double.toString( SIGMA_PRE_SEGMENTATION_Y ) );
 			props.setProperty( "SIGMA_GL_DETECTION_X", Double.toString( SIGMA_GL_DETECTION_X ) );
 			props.setProperty( "SIGMA_GL_DETECTION_Y", Double.toString( SIGMA_GL_DETECTION_Y ) );
+			props.setProperty( "ILP_THREAD_BUDGET", Integer.toString( ILP_THREAD_BUDGET ) );
+			props.setProperty( "NUM_THREADS", Integer.toString( NUM_THREADS ) );
+			props.setProperty( "STREAMING_PREPROCESSING", Boolean.toString( STREAMING_PREPROCESSING ) );
+			props.setProperty( "FAST_STRAIGHTENING", Boolean.toString( FAST_STRAIGHTENING ) );
+			props.setProperty( "FUSED_STRAIGHTEN_AND_CROP", Boolean.toString( FUSED_STRAIGHTEN_AND_CROP ) );
+			props.setProperty( "PIXEL_TYPE", PIXEL_TYPE );
+			props.setProperty( "STORAGE_MODE", STORAGE_MODE );
+			props.setProperty( "STORAGE_PATH", STORAGE_PATH );
+			props.setProperty( "STAGE_CACHE_ENABLED", Boolean.toString( STAGE_CACHE_ENABLED ) );
+			props.setProperty( "STAGE_CACHE_PATH", STAGE_CACHE_PATH );
+			props.setProperty( "BATCH_MAX_PARALLEL_POSITIONS", Integer.toString( BATCH_MAX_PARALLEL_POSITIONS ) );
 			props.setProperty( "DEFAULT_PATH", DEFAULT_PATH );
 
 			final java.awt.Point loc = guiFrame.getLocation();
@@ -664,59 +1002,150 @@ public class MotherMachine {
 	 *
 	 * @param path
 	 *            the folder to be processed.
+	 * @throws Exception
+	 *             if loading or any of the processing stages fails (no
+	 *             partial results are kept in that case).
 	 */
-	private void processDataFromFolder( final String path ) {
-		// load tiffs from folder
-		System.out.print( "Loading tiff sequence..." );
-		loadTiffSequence( path );
-		System.out.println( " done!" );
+	private void processDataFromFolder( final String path ) throws Exception {
+		PipelineMetrics.Stage stage;
 
-		// straighten loaded images
-		System.out.print( "Staighten loaded images..." );
-		straightenRawImg();
-		System.out.println( " done!" );
+		// keys into the stage cache (each key depends on the key of the previous stage and all parameters of the stage it belongs to)
+		StageCache cache = null;
+		String rawKey = null, glKey = null, sepKey = null;
+		if ( STAGE_CACHE_ENABLED ) {
+			try {
+				cache = new StageCache( new File( STAGE_CACHE_PATH ) );
+				rawKey = StageCache.key( "raw", StageCache.fingerprint( DoubleTypeImgLoader.listTiffsInFolder( path ) ), PIXEL_TYPE, FAST_STRAIGHTENING, FUSED_STRAIGHTEN_AND_CROP, STREAMING_PREPROCESSING );
+				glKey = StageCache.key( "gls", rawKey, SIGMA_GL_DETECTION_X, SIGMA_GL_DETECTION_Y, GL_OFFSET_LATERAL, GL_OFFSET_TOP, GL_OFFSET_BOTTOM, TEMPORAL_WELL_MODEL, WELL_MODEL_MAX_DRIFT );
+				sepKey = StageCache.key( "sep", glKey, BGREM_TEMPLATE_XMIN, BGREM_TEMPLATE_XMAX, BGREM_X_OFFSET, SIGMA_PRE_SEGMENTATION_X, SIGMA_PRE_SEGMENTATION_Y );
+			}
+			catch ( final Exception e ) {
+				e.printStackTrace();
+				cache = null;
+			}
+		}
 
-		// cropping loaded images
-		System.out.print( "Cropping to ROI..." );
-		cropRawImgToROI();
-		System.out.println( " done!" );
+		// a cached stack is only usable together with the geometry it was straightened and cropped with
+		final double[] cachedGeometry = ( cache == null ) ? null : cache.loadGeometry( rawKey );
+		final Img< DoubleType > cachedRaw = ( cachedGeometry == null ) ? null : cache.loadStack( rawKey, getStackFactory() );
+		if ( cachedRaw != null ) {
+			System.out.println( "Using cached straightened and cropped images." );
+			setStraighteningGeometry( cachedGeometry );
+			imgRaw = cachedRaw;
+		} else if ( STREAMING_PREPROCESSING ) {
+			// load, straighten and crop one tiff after the other
+			System.out.print( "Loading, straightening and cropping tiff sequence (streaming)..." );
+			stage = metrics.start( "load+straighten+crop" );
+			loadStraightenAndCropTiffSequence( path );
+			stage.stop();
+			System.out.println( " done!" );
+		} else {
+			// load tiffs from folder
+			System.out.print( "Loading tiff sequence..." );
+			stage = metrics.start( "load" );
+			loadTiffSequence( path );
+			stage.stop();
+			System.out.println( " done!" );
 
-		// setup ARGB image (that will eventually contain annotations)
-		System.out.print( "Spawning off annotation image (ARGB)..." );
-		resetImgAnnotatedLike( getImgRaw() );
-		try {
-			DataMover.convertAndCopy( getImgRaw(), getImgAnnotated() );
+			if ( FUSED_STRAIGHTEN_AND_CROP ) {
+				// straighten loaded images directly into the ROI
+				System.out.print( "Staighten and crop loaded images..." );
+				stage = metrics.start( "straighten+crop" );
+				straightenAndCropRawImg();
+				stage.stop();
+				System.out.println( " done!" );
+			} else {
+				// straighten loaded images
+				System.out.print( "Staighten loaded images..." );
+				stage = metrics.start( "straighten" );
+				straightenRawImg();
+				stage.stop();
+				System.out.println( " done!" );
+
+				// cropping loaded images
+				System.out.print( "Cropping to ROI..." );
+				stage = metrics.start( "crop" );
+				cropRawImgToROI();
+				stage.stop();
+				System.out.println( " done!" );
+			}
 		}
-		catch ( final Exception e ) {
-			// conversion might not be supported
-			e.printStackTrace();
+		if ( cache != null && cachedRaw == null ) {
+			cache.saveStack( rawKey, imgRaw );
+			cache.saveGeometry( rawKey, getStraighteningGeometry() );
+		}
+		frameDims = new long[] { imgRaw.dimension( 0 ), imgRaw.dimension( 1 ) };
+		numFrames = imgRaw.dimension( 2 );
+
+		// setup ARGB image (that will eventually contain annotations)
+		// (only ever shown in the GUI, hence not needed when running headless)
+		if ( !HEADLESS ) {
+			System.out.print( "Spawning off annotation image (ARGB)..." );
+			stage = metrics.start( "annotation image" );
+			resetImgAnnotatedLike( getImgRaw() );
+			try {
+				DataMover.convertAndCopy( getImgRaw(), getImgAnnotated() );
+			}
+			catch ( final Exception e ) {
+				// conversion might not be supported
+				e.printStackTrace();
+			}
+			stage.stop();
+			System.out.println( " done!" );
 		}
-		System.out.println( " done!" );
 
 		System.out.print( "Searching for GrowthLines..." );
-		resetImgTempToRaw();
-		findGrowthLines();
+		stage = metrics.start( "gl detection" );
+		final List< GrowthLine > cachedGLs = ( cache == null ) ? null : cache.loadGrowthLines( glKey );
+		if ( cachedGLs != null ) {
+			System.out.print( " (using cached GrowthLines)" );
+			setGrowthLines( cachedGLs );
+		} else {
+			if ( TEMPORAL_WELL_MODEL ) {
+				findGrowthLinesWithWellModel();
+			} else {
+				findGrowthLines();
+			}
+			if ( cache != null ) {
+				cache.saveGrowthLines( glKey, getGrowthLines() );
+			}
+		}
 		annotateDetectedWellCenters();
+		stage.stop();
 		System.out.println( " done!" );
 
-		// subtracting BG in RAW image...
-		System.out.print( "Subtracting background..." );
-		subtractBackgroundInRaw();
-		// ...and make temp image be the same
-		resetImgTempToRaw();
-		System.out.println( " done!" );
+		final boolean sepValuesCached = ( cache != null ) && cache.loadSeparationValues( sepKey, getGrowthLines() );
+		if ( sepValuesCached && HEADLESS ) {
+			// all hypotheses will be built from the cached gap separation values, no images needed
+			System.out.println( "Using cached gap separation values (skipping background subtraction)." );
+		} else {
+			// subtracting BG in RAW image...
+			System.out.print( "Subtracting background..." );
+			stage = metrics.start( "background removal" );
+			subtractBackgroundInRaw();
+			stage.stop();
+			System.out.println( " done!" );
+
+			// ...and smooth it into the strips of the growth lines
+			System.out.print( "Extracting growth line strips..." );
+			stage = metrics.start( "strips" );
+			extractGrowthLineStrips();
+			stage.stop();
+			System.out.println( " done!" );
+		}
 
 		System.out.print( "Generating Segmentation Hypotheses..." );
+		stage = metrics.start( "hypotheses" );
 		generateSegmentationHypotheses();
+		stage.stop();
 		System.out.println( " done!" );
-
-//		System.out.println( "Generating Integer Linear Programs..." );
-//		generateILPs();
-//		System.out.println( " done!" );
-//
-//		System.out.println( "Running Integer Linear Programs..." );
-//		runILPs();
-//		System.out.println( " done!" );
+		if ( cache != null && !sepValuesCached ) {
+			cache.saveSeparationValues( sepKey, getGrowthLines() );
+		}
+		if ( HEADLESS ) {
+			// imgRaw is only needed for display, everything else works on the strips
+			setImgRaw( null );
+		}
 	}
 
 	/**
@@ -725,28 +1154,33 @@ public class MotherMachine {
 	 *
 	 * @param folder
 	 *            string containing a sequence of '.tif' files.
+	 * @throws Exception
+	 *             if the tiffs could not be loaded.
 	 */
-	public void loadTiffSequence( final String folder ) {
-		try {
-			imgRaw = DoubleTypeImgLoader.loadStackOfTiffsFromFolder( folder );
-		}
-		catch ( final Exception e ) {
-			e.printStackTrace();
-		}
+	public void loadTiffSequence( final String folder ) throws Exception {
+		imgRaw = DoubleTypeImgLoader.loadStackOfTiffsFromFolder( folder, NUM_THREADS, getStackFactory() );
 	}
 
 	/**
-	 * Resets imgTemp to contain the raw data from imgRaw.
+	 * @return a factory creating image stacks with the configured
+	 *         <code>PIXEL_TYPE</code> and <code>STORAGE_MODE</code>.
 	 */
-	public void resetImgTempToRaw() {
-		setImgTemp( imgRaw.copy() );
+	public static DoubleTypeStackFactory getStackFactory() {
+		return new DoubleTypeStackFactory( PIXEL_TYPE, STORAGE_MODE, new File( STORAGE_PATH ) );
 	}
 
 	/**
-	 * Resets imgTemp to contain the raw data from imgRaw.
+	 * Resets imgAnnotated to an empty ARGB image of the size of the given one.
 	 */
 	public void resetImgAnnotatedLike( final Img< DoubleType > img ) {
-		imgAnnotated = DataMover.createEmptyArrayImgLike( img, new ARGBType() );
+		if ( DoubleTypeStackFactory.STORAGE_MODE_MAPPED.equals( STORAGE_MODE ) ) {
+			// might exceed the size of a single array
+			final long[] dims = new long[ img.numDimensions() ];
+			img.dimensions( dims );
+			imgAnnotated = new PlanarImgFactory< ARGBType >().create( dims, new ARGBType() );
+		} else {
+			imgAnnotated = DataMover.createEmptyArrayImgLike( img, new ARGBType() );
+		}
 	}
 
 	/**
@@ -759,14 +1193,42 @@ public class MotherMachine {
 	 * @return the straightened <code>Img</code>. (Might be larger to avoid
 	 *         loosing data!)
 	 */
-	private void straightenRawImg() {
+	private void straightenRawImg() throws Exception {
 		assert ( imgRaw.numDimensions() == 3 );
 
+		// find out how slanted the given stack is...
+		computeStraighteningTransform( Views.hyperSlice( imgRaw, 2, 0 ) );
+
 		// new raw image
-		Img< DoubleType > rawNew;
+		final Img< DoubleType > rawNew = getStackFactory().create( new long[] { straightenedMax[ 0 ] - straightenedMin[ 0 ], straightenedMax[ 1 ] - straightenedMin[ 1 ], imgRaw.dimension( 2 ) } );
 
-		// find out how slanted the given stack is...
-		final List< Cursor< DoubleType >> points = new Loops< DoubleType, Cursor< DoubleType >>().forEachHyperslice( Views.hyperSlice( imgRaw, 2, 0 ), 0, new FindLocationAboveThreshold< DoubleType >( new DoubleType( 0.33 ) ) );
+		// ...and inversely rotate the whole stack in XY (slices are independent)
+		final Img< DoubleType > rawOld = imgRaw;
+		ParallelLoops.forEach( ( int ) rawOld.dimension( 2 ), NUM_THREADS, new ParallelLoops.Body() {
+
+			@Override
+			public void run( final int i ) {
+				straightenSlice( Views.hyperSlice( rawOld, 2, i ), Views.iterable( Views.hyperSlice( rawNew, 2, i ) ) );
+			}
+		} );
+
+		// set new, straightened image to be the new imgRaw
+		imgRaw = rawNew;
+	}
+
+	/**
+	 * Finds out how slanted the given (first) frame is and computes the affine
+	 * transform, as well as the resulting output interval, used to straighten
+	 * all frames. Results are stored in <code>dCorrectedSlope</code>,
+	 * <code>straighteningTransform</code>, <code>straightenedMin</code> and
+	 * <code>straightenedMax</code> (and <code>straighteningTable</code> if
+	 * FAST_STRAIGHTENING is set).
+	 *
+	 * @param slice
+	 *            - the 2d frame the slant is estimated from.
+	 */
+	private void computeStraighteningTransform( final RandomAccessibleInterval< DoubleType > slice ) {
+		final List< Cursor< DoubleType >> points = new Loops< DoubleType, Cursor< DoubleType >>().forEachHyperslice( slice, 0, new FindLocationAboveThreshold< DoubleType >( new DoubleType( 0.33 ) ) );
 
 		final SimpleRegression regression = new SimpleRegression();
 		final long[] pos = new long[ 2 ];
@@ -787,17 +1249,16 @@ public class MotherMachine {
 		final double radSlant = Math.atan( regression.getSlope() );
 		// System.out.println("slope = " + regression.getSlope());
 		// System.out.println("intercept = " + regression.getIntercept());
-		final double[] dCenter2d = new double[] { imgRaw.dimension( 0 ) * 0.5, -regression.getIntercept() + points.size() * regression.getSlope() };
+		final double[] dCenter2d = new double[] { slice.dimension( 0 ) * 0.5, -regression.getIntercept() + points.size() * regression.getSlope() };
 
-		// ...and inversely rotate the whole stack in XY
 		final AffineTransform2D affine = new AffineTransform2D();
 		affine.translate( -dCenter2d[ 0 ], -dCenter2d[ 1 ] );
 		affine.rotate( radSlant );
 		affine.translate( dCenter2d[ 0 ], dCenter2d[ 1 ] );
 
-		long minX = 0, maxX = imgRaw.dimension( 0 );
+		long minX = 0, maxX = slice.dimension( 0 );
 		long minY = 0;
-		final long maxY = imgRaw.dimension( 1 );
+		final long maxY = slice.dimension( 1 );
 		final double[][] corners = { new double[] { minX, minY }, new double[] { maxX, minY }, new double[] { minX, maxY }, new double[] { maxX, maxY } };
 		final double[] tmp = new double[ 2 ];
 		for ( final double[] corner : corners ) {
@@ -810,21 +1271,38 @@ public class MotherMachine {
 			// wanted!)
 		}
 
-		rawNew = imgRaw.factory().create( new long[] { maxX - minX, maxY - minY, imgRaw.dimension( 2 ) }, imgRaw.firstElement() );
+		this.straighteningTransform = affine;
+		this.straighteningSourceDims = new long[] { slice.dimension( 0 ), slice.dimension( 1 ) };
+		this.straightenedMin = new long[] { minX, minY };
+		this.straightenedMax = new long[] { maxX, maxY };
+		this.straighteningTable = FAST_STRAIGHTENING ? new StraighteningTable( affine, ( int ) slice.dimension( 0 ), ( int ) slice.dimension( 1 ), straightenedMin, ( int ) ( maxX - minX ), ( int ) ( maxY - minY ) ) : null;
+		this.croppedStraighteningTable = null; // the ROI needs to be recomputed
+	}
 
-		for ( i = 0; i < imgRaw.dimension( 2 ); i++ ) {
-			final RandomAccessibleInterval< DoubleType > viewZSlize = Views.hyperSlice( imgRaw, 2, i );
-			final RandomAccessible< DoubleType > raInfZSlize = Views.extendValue( viewZSlize, new DoubleType( 0.0 ) );
-			final RealRandomAccessible< DoubleType > rraInterpolatedZSlize = Views.interpolate( raInfZSlize, new NLinearInterpolatorFactory< DoubleType >() );
-			final RandomAccessible< DoubleType > raRotatedZSlize = RealViews.affine( rraInterpolatedZSlize, affine );
+	/**
+	 * Straightens one frame using the transform computed by
+	 * <code>computeStraighteningTransform</code>. All accessors are created
+	 * per call, hence frames can be straightened concurrently.
+	 *
+	 * @param slice
+	 *            - the 2d frame to be straightened.
+	 * @param target
+	 *            - the 2d target, sized
+	 *            <code>straightenedMax - straightenedMin</code>.
+	 */
+	private void straightenSlice( final RandomAccessibleInterval< DoubleType > slice, final IterableInterval< DoubleType > target ) {
+		if ( straighteningTable != null && straighteningTable.fits( slice ) ) {
+			straighteningTable.apply( slice, target );
+			return;
+		}
 
-			final RandomAccessibleInterval< DoubleType > raiRotatedAndTruncatedZSlize = Views.zeroMin( Views.interval( raRotatedZSlize, new long[] { minX, minY }, new long[] { maxX, maxY } ) );
+		final RandomAccessible< DoubleType > raInfZSlize = Views.extendValue( slice, new DoubleType( 0.0 ) );
+		final RealRandomAccessible< DoubleType > rraInterpolatedZSlize = Views.interpolate( raInfZSlize, new NLinearInterpolatorFactory< DoubleType >() );
+		final RandomAccessible< DoubleType > raRotatedZSlize = RealViews.affine( rraInterpolatedZSlize, straighteningTransform );
 
-			DataMover.copy( raiRotatedAndTruncatedZSlize, Views.iterable( Views.hyperSlice( rawNew, 2, i ) ) );
-		}
+		final RandomAccessibleInterval< DoubleType > raiRotatedAndTruncatedZSlize = Views.zeroMin( Views.interval( raRotatedZSlize, straightenedMin, straightenedMax ) );
 
-		// set new, straightened image to be the new imgRaw
-		imgRaw = rawNew;
+		DataMover.copy( raiRotatedAndTruncatedZSlize, target );
 	}
 
 	/**
@@ -840,25 +1318,44 @@ public class MotherMachine {
 	private void cropRawImgToROI() {
 		assert ( imgRaw.numDimensions() == 3 );
 
-		// return image
-		Img< DoubleType > rawNew = null;
+		// check for possible crop in first and last image
+		computeROI( Views.hyperSlice( imgRaw, 2, 0 ), Views.hyperSlice( imgRaw, 2, imgRaw.dimension( 2 ) - 1 ) );
+
+		// create image that can host cropped data
+		final Img< DoubleType > rawNew = getStackFactory().create( new long[] { roi[ 2 ] - roi[ 0 ], roi[ 3 ] - roi[ 1 ], imgRaw.dimension( 2 ) } );
+
+		// and copy it there
+		for ( int i = 0; i < imgRaw.dimension( 2 ); i++ ) {
+			cropSlice( Views.hyperSlice( imgRaw, 2, i ), Views.iterable( Views.hyperSlice( rawNew, 2, i ) ) );
+			// Normalize.normalize(Views.iterable( Views.hyperSlice(ret, 2, i)
+			// ), new DoubleType(0.0), new DoubleType(1.0));
+		}
 
+		// set new, straightened image to be the new imgRaw
+		imgRaw = rawNew;
+	}
+
+	/**
+	 * Finds the region of interest (the longest interval of rows with
+	 * sufficient variance) in the given straightened frames. The result is
+	 * stored as <code>{left, top, right, bottom}</code> in <code>roi</code>.
+	 *
+	 * @param firstSlice
+	 *            - the first straightened 2d frame.
+	 * @param lastSlice
+	 *            - the last straightened 2d frame.
+	 */
+	private void computeROI( final RandomAccessibleInterval< DoubleType > firstSlice, final RandomAccessibleInterval< DoubleType > lastSlice ) {
 		// crop positions to be evaluated
-		long top = 0, bottom = imgRaw.dimension( 1 );
+		long top = 0, bottom = firstSlice.dimension( 1 );
 		long left, right;
 
-		// check for possible crop in first and last image
-		final long[] lZPositions = new long[] { 0, imgRaw.dimension( 2 ) - 1 };
-		for ( final long lZPos : lZPositions ) {
-			// find out how slanted the given stack is...
-			final List< DoubleType > points = new Loops< DoubleType, DoubleType >().forEachHyperslice( Views.hyperSlice( imgRaw, 2, lZPos ), 1, new VarOfRai< DoubleType >() );
-
-			final double[] y = new double[ points.size() ];
-			int i = 0;
-			for ( final DoubleType dtPoint : points ) {
-				y[ i ] = dtPoint.get();
-				i++;
-			}
+		final List< RandomAccessibleInterval< DoubleType >> slices = new ArrayList< RandomAccessibleInterval< DoubleType >>();
+		slices.add( firstSlice );
+		slices.add( lastSlice );
+		for ( final RandomAccessibleInterval< DoubleType > slice : slices ) {
+			// variance of each row (single pass over the slice)
+			final double[] y = new RaiRowStatistics< DoubleType >( 1 ).compute( slice ).var;
 
 			// Plot2d.simpleLinePlot("Variance in image rows", y, "Variance");
 			final double threshold = 0.005;
@@ -890,254 +1387,233 @@ public class MotherMachine {
 			// System.out.println(">> Top/bottom: " + top + " / " + bottom);
 		}
 		left = Math.round( Math.floor( 0 - this.dCorrectedSlope * bottom ) );
-		right = Math.round( Math.ceil( imgRaw.dimension( 0 ) + this.dCorrectedSlope * ( imgRaw.dimension( 1 ) - top ) ) );
+		right = Math.round( Math.ceil( firstSlice.dimension( 0 ) + this.dCorrectedSlope * ( firstSlice.dimension( 1 ) - top ) ) );
 
-		// create image that can host cropped data
-		rawNew = imgRaw.factory().create( new long[] { right - left, bottom - top, imgRaw.dimension( 2 ) }, imgRaw.firstElement() );
-
-		// and copy it there
-		for ( int i = 0; i < imgRaw.dimension( 2 ); i++ ) {
-			final RandomAccessibleInterval< DoubleType > viewZSlize = Views.hyperSlice( imgRaw, 2, i );
-			final RandomAccessibleInterval< DoubleType > viewCroppedZSlize = Views.zeroMin( Views.interval( viewZSlize, new long[] { left, top }, new long[] { bottom, right } ) );
+		this.roi = new long[] { left, top, right, bottom };
+		this.croppedStraighteningTable = ( straighteningTable == null ) ? null : straighteningTable.crop( left, top, ( int ) ( right - left ), ( int ) ( bottom - top ) );
+	}
 
-			DataMover.copy( viewCroppedZSlize, Views.iterable( Views.hyperSlice( rawNew, 2, i ) ) );
-			// Normalize.normalize(Views.iterable( Views.hyperSlice(ret, 2, i)
-			// ), new DoubleType(0.0), new DoubleType(1.0));
+	/**
+	 * @return the straightening transform and ROI (as computed by
+	 *         <code>computeStraighteningTransform</code> and
+	 *         <code>computeROI</code>) flattened into one array, such that
+	 *         they can be stored next to a cached stack (see
+	 *         <code>setStraighteningGeometry</code>).
+	 */
+	private double[] getStraighteningGeometry() {
+		final double[] geometry = new double[ 17 ];
+		geometry[ 0 ] = dCorrectedSlope;
+		for ( int row = 0; row < 2; row++ ) {
+			for ( int col = 0; col < 3; col++ ) {
+				geometry[ 1 + 3 * row + col ] = straighteningTransform.get( row, col );
+			}
 		}
+		for ( int d = 0; d < 2; d++ ) {
+			geometry[ 7 + d ] = straighteningSourceDims[ d ];
+			geometry[ 9 + d ] = straightenedMin[ d ];
+			geometry[ 11 + d ] = straightenedMax[ d ];
+		}
+		for ( int i = 0; i < 4; i++ ) {
+			geometry[ 13 + i ] = roi[ i ];
+		}
+		return geometry;
+	}
 
-		// set new, straightened image to be the new imgRaw
-		imgRaw = rawNew;
+	/**
+	 * Restores the state <code>computeStraighteningTransform</code> and
+	 * <code>computeROI</code> would have computed (including the
+	 * straightening tables if FAST_STRAIGHTENING is set), such that further
+	 * frames can be straightened and cropped (see
+	 * <code>processAdditionalFrame</code>).
+	 *
+	 * @param geometry
+	 *            as returned by <code>getStraighteningGeometry</code>.
+	 */
+	private void setStraighteningGeometry( final double[] geometry ) {
+		dCorrectedSlope = geometry[ 0 ];
+		straighteningTransform = new AffineTransform2D();
+		straighteningTransform.set( geometry[ 1 ], geometry[ 2 ], geometry[ 3 ], geometry[ 4 ], geometry[ 5 ], geometry[ 6 ] );
+		straighteningSourceDims = new long[] { ( long ) geometry[ 7 ], ( long ) geometry[ 8 ] };
+		straightenedMin = new long[] { ( long ) geometry[ 9 ], ( long ) geometry[ 10 ] };
+		straightenedMax = new long[] { ( long ) geometry[ 11 ], ( long ) geometry[ 12 ] };
+		roi = new long[] { ( long ) geometry[ 13 ], ( long ) geometry[ 14 ], ( long ) geometry[ 15 ], ( long ) geometry[ 16 ] };
+		straighteningTable = FAST_STRAIGHTENING ? new StraighteningTable( straighteningTransform, ( int ) straighteningSourceDims[ 0 ], ( int ) straighteningSourceDims[ 1 ], straightenedMin, ( int ) ( straightenedMax[ 0 ] - straightenedMin[ 0 ] ), ( int ) ( straightenedMax[ 1 ] - straightenedMin[ 1 ] ) ) : null;
+		croppedStraighteningTable = ( straighteningTable == null ) ? null : straighteningTable.crop( roi[ 0 ], roi[ 1 ], ( int ) ( roi[ 2 ] - roi[ 0 ] ), ( int ) ( roi[ 3 ] - roi[ 1 ] ) );
 	}
 
 	/**
-	 * Simple but effective method to subtract uneven illumination from the
-	 * growth-line data.
+	 * Copies the ROI computed by <code>computeROI</code> out of the given
+	 * straightened frame.
 	 *
-	 * @param img
-	 *            DoubleType image stack.
+	 * @param slice
+	 *            - the straightened 2d frame.
+	 * @param target
+	 *            - the 2d target, sized to the ROI.
 	 */
-	private void subtractBackgroundInRaw() {
+	private void cropSlice( final RandomAccessibleInterval< DoubleType > slice, final IterableInterval< DoubleType > target ) {
+		final RandomAccessibleInterval< DoubleType > viewCroppedZSlize = Views.zeroMin( Views.interval( slice, new long[] { roi[ 0 ], roi[ 1 ] }, new long[] { roi[ 3 ], roi[ 2 ] } ) );
+		DataMover.copy( viewCroppedZSlize, target );
+	}
 
-		for ( int i = 0; i < getGrowthLines().size(); i++ ) {
-			for ( int f = 0; f < getGrowthLines().get( i ).size(); f++ ) {
-				final GrowthLineFrame glf = getGrowthLines().get( i ).get( f );
+	/**
+	 * Straightens the given frame and crops the ROI out of it (see
+	 * <code>computeROI</code>) in one go.
+	 *
+	 * @param slice
+	 *            - the 2d frame to be straightened.
+	 * @param target
+	 *            - the 2d target, sized like the ROI.
+	 */
+	private void straightenAndCropSlice( final RandomAccessibleInterval< DoubleType > slice, final IterableInterval< DoubleType > target ) {
+		if ( croppedStraighteningTable != null && croppedStraighteningTable.fits( slice ) ) {
+			// only pixels within the ROI are computed at all
+			croppedStraighteningTable.apply( slice, target );
+			return;
+		}
 
-				final int glfX = glf.getAvgXpos();
-				if ( glfX == -1 ) continue; // do not do anything with empty GLFs
+		final Img< DoubleType > straightened = new ArrayImgFactory< DoubleType >().create( new long[] { straightenedMax[ 0 ] - straightenedMin[ 0 ], straightenedMax[ 1 ] - straightenedMin[ 1 ] }, new DoubleType() );
+		straightenSlice( slice, straightened );
+		cropSlice( straightened, target );
+	}
 
-				final int glfY1 = 0; // gl.getFirstPoint().getIntPosition(1);
-				final int glfY2 = ( int ) imgRaw.dimension( 1 ) - 1; // gl.getLastPoint().getIntPosition(1);
+	/**
+	 * Alternative to <code>straightenRawImg</code> followed by
+	 * <code>cropRawImgToROI</code>. Straightening transform and ROI are
+	 * estimated from the first and last frame, afterwards all frames are
+	 * straightened directly into the cropped stack (concurrently, using
+	 * NUM_THREADS threads).
+	 */
+	private void straightenAndCropRawImg() throws Exception {
+		assert ( imgRaw.numDimensions() == 3 );
 
-				final IntervalView< DoubleType > frame = Views.hyperSlice( imgRaw, 2, f );
+		// estimate straightening transform and ROI from first and last frame
+		computeStraighteningTransform( Views.hyperSlice( imgRaw, 2, 0 ) );
+		final long[] straightenedDims = new long[] { straightenedMax[ 0 ] - straightenedMin[ 0 ], straightenedMax[ 1 ] - straightenedMin[ 1 ] };
+		final Img< DoubleType > straightenedFirst = new ArrayImgFactory< DoubleType >().create( straightenedDims, new DoubleType() );
+		final Img< DoubleType > straightenedLast = new ArrayImgFactory< DoubleType >().create( straightenedDims, new DoubleType() );
+		straightenSlice( Views.hyperSlice( imgRaw, 2, 0 ), straightenedFirst );
+		straightenSlice( Views.hyperSlice( imgRaw, 2, imgRaw.dimension( 2 ) - 1 ), straightenedLast );
+		computeROI( straightenedFirst, straightenedLast );
 
-				double rowAvgs[] = new double[ glfY2 - glfY1 + 1 ];
-				int colCount = 0;
-				// Look to the left if you are not the first GLF
-				if ( glfX > MotherMachine.BGREM_TEMPLATE_XMAX ) {
-					final IntervalView< DoubleType > leftBackgroundWindow = Views.interval( frame, new long[] { glfX - MotherMachine.BGREM_TEMPLATE_XMAX, glfY1 }, new long[] { glfX - MotherMachine.BGREM_TEMPLATE_XMIN, glfY2 } );
-					rowAvgs = addRowSumsFromInterval( leftBackgroundWindow, rowAvgs );
-					colCount += ( MotherMachine.BGREM_TEMPLATE_XMAX - MotherMachine.BGREM_TEMPLATE_XMIN );
-				}
-				// Look to the right if you are not the last GLF
-				if ( glfX < imgRaw.dimension( 0 ) - MotherMachine.BGREM_TEMPLATE_XMAX ) {
-					final IntervalView< DoubleType > rightBackgroundWindow = Views.interval( frame, new long[] { glfX + MotherMachine.BGREM_TEMPLATE_XMIN, glfY1 }, new long[] { glfX + MotherMachine.BGREM_TEMPLATE_XMAX, glfY2 } );
-					rowAvgs = addRowSumsFromInterval( rightBackgroundWindow, rowAvgs );
-					colCount += ( MotherMachine.BGREM_TEMPLATE_XMAX - MotherMachine.BGREM_TEMPLATE_XMIN );
-				}
-				// compute averages
-				for ( int j = 0; j < rowAvgs.length; j++ ) {
-					rowAvgs[ j ] /= colCount;
-				}
+		// straighten all frames into the cropped stack
+		final Img< DoubleType > rawOld = imgRaw;
+		final Img< DoubleType > rawNew = getStackFactory().create( new long[] { roi[ 2 ] - roi[ 0 ], roi[ 3 ] - roi[ 1 ], rawOld.dimension( 2 ) } );
+		ParallelLoops.forEach( ( int ) rawOld.dimension( 2 ), NUM_THREADS, new ParallelLoops.Body() {
 
-				// Subtract averages you've seen to your left and/or to your
-				// right
-				final long x1 = Math.max( 0, glfX - MotherMachine.BGREM_X_OFFSET );
-				final long x2 = Math.min( frame.dimension( 0 ) - 1, glfX + MotherMachine.BGREM_X_OFFSET );
-				final IntervalView< DoubleType > growthLineArea = Views.interval( frame, new long[] { x1, glfY1 }, new long[] { x2, glfY2 } );
-				removeValuesFromRows( growthLineArea, rowAvgs );
-				// Normalize the zone we removed the background from...
-				Normalize.normalize( Views.iterable( growthLineArea ), new DoubleType( 0.0 ), new DoubleType( 1.0 ) );
+			@Override
+			public void run( final int i ) {
+				straightenAndCropSlice( Views.hyperSlice( rawOld, 2, i ), Views.iterable( Views.hyperSlice( rawNew, 2, i ) ) );
 			}
-		}
+		} );
+
+		imgRaw = rawNew;
 	}
 
 	/**
-	 * Adds all intensity values of row i in view to rowSums[i].
+	 * Streaming alternative to <code>loadTiffSequence</code>,
+	 * <code>straightenRawImg</code> and <code>cropRawImgToROI</code>.
+	 * Straightening transform and ROI are estimated from the first and the last
+	 * frame. Afterwards each tiff is decoded, normalized, straightened and
+	 * cropped (concurrently, using NUM_THREADS threads) and directly written
+	 * into the final imgRaw. Besides the final stack only one frame per thread
+	 * is in flight at any time.
 	 *
-	 * @param view
-	 * @param rowSums
-	 */
-	private double[] addRowSumsFromInterval( final IntervalView< DoubleType > view, final double[] rowSums ) {
-		for ( int i = 0; i < view.dimension( 1 ); i++ ) {
-			final IntervalView< DoubleType > row = Views.hyperSlice( view, 1, i );
-			final Cursor< DoubleType > cursor = Views.iterable( row ).cursor();
-			while ( cursor.hasNext() ) {
-				rowSums[ i ] += cursor.next().get();
+	 * @param folder
+	 *            string containing a sequence of '.tif' files.
+	 */
+	private void loadStraightenAndCropTiffSequence( final String folder ) throws Exception {
+		final File[] files = DoubleTypeImgLoader.listTiffsInFolder( folder );
+
+		// estimate straightening transform and ROI from first and last frame
+		final Img< DoubleType > first = DoubleTypeImgLoader.loadNormalizedTiff( files[ 0 ] );
+		computeStraighteningTransform( first );
+		final Img< DoubleType > straightened = new ArrayImgFactory< DoubleType >().create( new long[] { straightenedMax[ 0 ] - straightenedMin[ 0 ], straightenedMax[ 1 ] - straightenedMin[ 1 ] }, new DoubleType() );
+		straightenSlice( first, straightened );
+		final Img< DoubleType > straightenedLast = straightened.copy();
+		straightenSlice( DoubleTypeImgLoader.loadNormalizedTiff( files[ files.length - 1 ] ), straightenedLast );
+		computeROI( straightened, straightenedLast );
+
+		// stream all frames into the final stack
+		final Img< DoubleType > stack = getStackFactory().create( new long[] { roi[ 2 ] - roi[ 0 ], roi[ 3 ] - roi[ 1 ], files.length } );
+		ParallelLoops.forEach( files.length, NUM_THREADS, new ParallelLoops.Body() {
+
+			@Override
+			public void run( final int i ) throws Exception {
+				straightenAndCropSlice( DoubleTypeImgLoader.loadNormalizedTiff( files[ i ] ), Views.iterable( Views.hyperSlice( stack, 2, i ) ) );
 			}
-		}
-		return rowSums;
+		} );
+		imgRaw = stack;
 	}
 
 	/**
-	 * Removes the value values[i] from all columns in row i of the given view.
-	 *
-	 * @param view
-	 * @param values
-	 */
-	private void removeValuesFromRows( final IntervalView< DoubleType > view, final double[] values ) {
-		for ( int i = 0; i < view.dimension( 1 ); i++ ) {
-			final Cursor< DoubleType > cursor = Views.iterable( Views.hyperSlice( view, 1, i ) ).cursor();
-			while ( cursor.hasNext() ) {
-				cursor.next().set( new DoubleType( Math.max( 0, cursor.get().get() - values[ i ] ) ) );
+	 * Simple but effective method to subtract uneven illumination from the
+	 * growth-line data. Frames are processed concurrently (using NUM_THREADS
+	 * threads), the GLFs within a frame one after the other (see
+	 * <code>BackgroundSubtractor</code>).
+	 */
+	private void subtractBackgroundInRaw() throws Exception {
+		final BackgroundSubtractor subtractor = new BackgroundSubtractor( BGREM_TEMPLATE_XMIN, BGREM_TEMPLATE_XMAX, BGREM_X_OFFSET );
+		ParallelLoops.forEach( ( int ) imgRaw.dimension( 2 ), NUM_THREADS, new ParallelLoops.Body() {
+
+			@Override
+			public void run( final int f ) {
+				final int[] glXs = new int[ getGrowthLines().size() ];
+				for ( int i = 0; i < glXs.length; i++ ) {
+					final GrowthLine gl = getGrowthLines().get( i );
+					glXs[ i ] = ( f < gl.size() ) ? gl.get( f ).getAvgXpos() : -1;
+				}
+				subtractor.subtract( imgRaw, f, glXs );
 			}
-		}
+		} );
 	}
 
 	/**
-	 * Estimates the centers of the growth lines given in 'imgTemp'.
+	 * Estimates the centers of the growth lines given in 'imgRaw'.
 	 * The found center lines are computed by a linear regression of growth line
 	 * center estimates.
 	 * Those estimates are obtained by convolving the image with a Gaussian
 	 * (parameterized by SIGMA_GL_DETECTION_*) and looking for local maxima in
 	 * that image.
 	 *
-	 * This function operates on 'imgTemp' and sets 'glCenterPoints' as
-	 * well as 'growthLines'.
+	 * Frames are smoothed and scanned for maxima concurrently (using
+	 * NUM_THREADS threads, each with its own scratch frame). Only rows that are
+	 * scanned for growth lines are smoothed.
+	 * This function sets 'glCenterPoints' as well as 'growthLines'.
 	 */
-	private void findGrowthLines() {
+	private void findGrowthLines() throws Exception {
 
 		this.setGrowthLines( new ArrayList< GrowthLine >() );
-		this.glCenterPoints = new ArrayList< List<List<Point>>>();
+		this.glCenterPoints = new ArrayList< RowMaxima >();
 
-		List< List< Point > > frameWellCenters;
+		// ------ GAUSS, FIND AND FILTER MAXIMA -------------
 
-		// ------ GAUSS -----------------------------
-
-		final int n = imgTemp.numDimensions();
-		final double[] sigmas = new double[ n ];
-		sigmas[ 0 ] = SIGMA_GL_DETECTION_X;
-		sigmas[ 1 ] = SIGMA_GL_DETECTION_Y;
-		try {
-			Gauss3.gauss( sigmas, Views.extendMirrorDouble( imgTemp ), imgTemp );
-		}
-		catch ( final IncompatibleTypeException e ) {
-			e.printStackTrace();
-		}
-
-
-		// ------ FIND AND FILTER MAXIMA -------------
-
-		final List< List< GrowthLineFrame >> collectionOfFrames = new ArrayList< List< GrowthLineFrame >>();
-
-		for ( long frameIdx = 0; frameIdx < imgTemp.dimension( 2 ); frameIdx++ ) {
-			final IntervalView< DoubleType > ivFrame = Views.hyperSlice( imgTemp, 2, frameIdx );
-
-			// Find maxima per image row (per frame)
-			frameWellCenters = new Loops< DoubleType, List< Point >>().forEachHyperslice( ivFrame, 1, new FindLocalMaxima< DoubleType >() );
-
-			// Delete detected points that are too lateral
-			for ( int y = 0; y < frameWellCenters.size(); y++ ) {
-				final List< Point > lstPoints = frameWellCenters.get( y );
-				for ( int x = lstPoints.size() - 1; x >= 0; x-- ) {
-					if ( lstPoints.get( x ).getIntPosition( 0 ) < GL_OFFSET_LATERAL || lstPoints.get( x ).getIntPosition( 0 ) > imgTemp.dimension( 0 ) - GL_OFFSET_LATERAL ) {
-						lstPoints.remove( x );
-					}
-				}
-				frameWellCenters.set( y, lstPoints );
-			}
+		// frames are smoothed and scanned concurrently, the found maxima are
+		// assembled into GrowthLineFrames afterwards (in frame order)
+		final SeparableGaussian2D gauss = new SeparableGaussian2D( SIGMA_GL_DETECTION_X, SIGMA_GL_DETECTION_Y );
+		final int width = ( int ) imgRaw.dimension( 0 );
+		final int height = ( int ) imgRaw.dimension( 1 );
+		final int frameCount = ( int ) imgRaw.dimension( 2 );
+		final RowMaxima[] wellCenters = new RowMaxima[ frameCount ];
+		final ThreadLocal< double[] > smoothed = new ThreadLocal< double[] >() {
 
-			// Delete detected points that are too high or too low
-			// (and use this sweep to compute 'maxWellCenterIdx' and 'maxWellCenters')
-			int maxWellCenters = 0;
-			int maxWellCentersIdx = 0;
-			for ( int y = 0; y < frameWellCenters.size(); y++ ) {
-				if ( y < GL_OFFSET_TOP || y > frameWellCenters.size() - 1 - GL_OFFSET_BOTTOM ) {
-					frameWellCenters.get( y ).clear();
-				} else {
-					if ( maxWellCenters < frameWellCenters.get( y ).size() ) {
-						maxWellCenters = frameWellCenters.get( y ).size();
-						maxWellCentersIdx = y;
-					}
-				}
+			@Override
+			protected double[] initialValue() {
+				return new double[ width * height ];
 			}
+		};
+		ParallelLoops.forEach( frameCount, NUM_THREADS, new ParallelLoops.Body() {
 
-			// add all the remaining points to 'glCenterPoints'
-			this.glCenterPoints.add( frameWellCenters );
-
-			// ------ DISTRIBUTE POINTS TO CORRESPONDING GROWTH LINES -------
-
-			final List< GrowthLineFrame > glFrames = new ArrayList< GrowthLineFrame >();
-
-			final Point pOrig = new Point( 3 );
-			pOrig.setPosition( frameIdx, 2 ); 	// location in original Img (will
-												// be recovered step by step)
-
-			// start at the row containing the maximum number of well centers
-			// (see above for the code that found maxWellCenter*)
-			pOrig.setPosition( maxWellCentersIdx, 1 );
-			for ( int x = 0; x < maxWellCenters; x++ ) {
-				glFrames.add( new GrowthLineFrame() ); // add one GLF for each found column
-				final Point p = frameWellCenters.get( maxWellCentersIdx ).get( x );
-				pOrig.setPosition( p.getLongPosition( 0 ), 0 );
-				glFrames.get( x ).addPoint( new Point( pOrig ) );
+			@Override
+			public void run( final int f ) {
+				gauss.convolve( imgRaw, f, smoothed.get(), getFirstScannedRow( height ), getLastScannedRow( height ) );
+				wellCenters[ f ] = findWellCenters( smoothed.get(), width, height );
 			}
-			// now go backwards from 'maxWellCenterIdx' and find the right assignment in case
-			// a different number of wells was found (going forwards comes below!)
-			for ( int y = maxWellCentersIdx - 1; y >= 0; y-- ) {
-				pOrig.setPosition( y, 1 ); // location in orig. Img (2nd of 3 steps)
+		} );
 
-				final List< Point > maximaPerImgRow = frameWellCenters.get( y );
-				if ( maximaPerImgRow.size() == 0 ) {
-					break;
-				}
-				// find best matching well for first point
-				final int posX = frameWellCenters.get( y ).get( 0 ).getIntPosition( 0 );
-				int mindist = ( int ) imgTemp.dimension( 0 );
-				int offset = 0;
-				for ( int x = 0; x < maxWellCenters; x++ ) {
-					final int wellPosX = glFrames.get( x ).getFirstPoint().getIntPosition( 0 );
-					if ( mindist > Math.abs( wellPosX - posX ) ) {
-						mindist = Math.abs( wellPosX - posX );
-						offset = x;
-					}
-				}
-				// move points into detected wells
-				for ( int x = offset; x < maximaPerImgRow.size(); x++ ) {
-					final Point p = maximaPerImgRow.get( x );
-					pOrig.setPosition( p.getLongPosition( 0 ), 0 );
-					glFrames.get( x ).addPoint( new Point( pOrig ) );
-				}
-			}
-			// now go forward from 'maxWellCenterIdx' and find the right assignment in case
-			// a different number of wells was found
-			for ( int y = maxWellCentersIdx + 1; y < frameWellCenters.size(); y++ ) {
-				pOrig.setPosition( y, 1 ); // location in original Img (2nd of 3
-				// steps)
-
-				final List< Point > maximaPerImgRow = frameWellCenters.get( y );
-				if ( maximaPerImgRow.size() == 0 ) {
-					break;
-				}
-				// find best matching well for first point
-				final int posX = frameWellCenters.get( y ).get( 0 ).getIntPosition( 0 );
-				int mindist = ( int ) imgTemp.dimension( 0 );
-				int offset = 0;
-				for ( int x = 0; x < maxWellCenters; x++ ) {
-					final int wellPosX = glFrames.get( x ).getLastPoint().getIntPosition( 0 );
-					if ( mindist > Math.abs( wellPosX - posX ) ) {
-						mindist = Math.abs( wellPosX - posX );
-						offset = x;
-					}
-				}
-				// move points into GLFs
-				for ( int x = offset; x < maximaPerImgRow.size(); x++ ) {
-					final Point p = maximaPerImgRow.get( x );
-					pOrig.setPosition( p.getLongPosition( 0 ), 0 );
-					glFrames.get( x ).addPoint( new Point( pOrig ) );
-				}
-			}
+		final List< List< GrowthLineFrame >> collectionOfFrames = new ArrayList< List< GrowthLineFrame >>();
+		for ( int f = 0; f < frameCount; f++ ) {
 			// add this list of GrowhtLIneFrames to the collection
-			collectionOfFrames.add( glFrames );
+			collectionOfFrames.add( findGrowthLineFrames( wellCenters[ f ], width, f ) );
 		}
 
 		// ------ SORT GrowthLineFrames FROM collectionOfFrames INTO this.growthLines -------------
@@ -1157,39 +1633,229 @@ public class MotherMachine {
 		}
 		// go backwards from there and prepand into GL
 		for ( int j = maxGLsPerFrameIdx - 1; j >= 0; j-- ) {
-			final int deltaL = maxGLsPerFrame - collectionOfFrames.get( j ).size();
-			int offset = 0;  // here we would like to have the shift to consider when copying GLFrames into GLs
-			double minDist = Double.MAX_VALUE;
-			for ( int i = 0; i <= deltaL; i++ ) {
-				double dist = collectionOfFrames.get( maxGLsPerFrameIdx ).get( i ).getAvgXpos();
-				dist -= collectionOfFrames.get( j ).get( 0 ).getAvgXpos();
-				if ( dist < minDist ) {
-					minDist = dist;
-					offset = i;
-				}
-			}
+			final int offset = findGrowthLineOffset( collectionOfFrames.get( maxGLsPerFrameIdx ), collectionOfFrames.get( j ) );
 			for ( int i = 0; i < collectionOfFrames.get( j ).size(); i++ ) {
 				getGrowthLines().get( offset + i ).prepand( collectionOfFrames.get( j ).get( i ) );
 			}
 		}
 		// go forwards and append into GL
 		for ( int j = maxGLsPerFrameIdx + 1; j < collectionOfFrames.size(); j++ ) {
-			final int deltaL = maxGLsPerFrame - collectionOfFrames.get( j ).size();
-			int offset = 0;  // here we would like to have the shift to consider when copying GLFrames into GLs
-			double minDist = Double.MAX_VALUE;
-			for ( int i = 0; i <= deltaL; i++ ) {
-				double dist = collectionOfFrames.get( maxGLsPerFrameIdx ).get( i ).getAvgXpos();
-				dist -= collectionOfFrames.get( j ).get( 0 ).getAvgXpos();
-				if ( dist < minDist ) {
-					minDist = dist;
-					offset = i;
-				}
-			}
+			final int offset = findGrowthLineOffset( collectionOfFrames.get( maxGLsPerFrameIdx ), collectionOfFrames.get( j ) );
 			for ( int i = 0; i < collectionOfFrames.get( j ).size(); i++ ) {
 				getGrowthLines().get( offset + i ).add( collectionOfFrames.get( j ).get( i ) );
 			}
 		}
 
+		// remember the frames all other frames were sorted against
+		this.referenceGrowthLineFrames = collectionOfFrames.get( maxGLsPerFrameIdx );
+	}
+
+	/**
+	 * Alternative to <code>findGrowthLines</code> (see TEMPORAL_WELL_MODEL).
+	 * Wells are detected once, like in <code>findGrowthLines</code> but on the
+	 * temporal mean projection of 'imgRaw'. For each frame only the horizontal
+	 * drift with respect to that projection is estimated and the GLFs of the
+	 * frame are the shifted wells of the projection. Hence all frames contain
+	 * the same growth lines.
+	 * This function sets 'glCenterPoints', 'growthLines', and 'wellModel'.
+	 */
+	private void findGrowthLinesWithWellModel() throws Exception {
+		final int width = ( int ) imgRaw.dimension( 0 );
+		final int height = ( int ) imgRaw.dimension( 1 );
+		final int frameCount = ( int ) imgRaw.dimension( 2 );
+		this.glCenterPoints = new ArrayList< RowMaxima >();
+
+		// ------ DETECT WELLS ON THE PROJECTION -------------
+
+		final double[] projection = WellPositionModel.meanProjection( imgRaw, NUM_THREADS );
+		final double[] smoothed = new double[ width * height ];
+		new SeparableGaussian2D( SIGMA_GL_DETECTION_X, SIGMA_GL_DETECTION_Y ).convolve( projection, 0, smoothed, width, height, getFirstScannedRow( height ), getLastScannedRow( height ) );
+		final List< GrowthLineFrame > wells = findGrowthLineFrames( findWellCenters( smoothed, width, height ), width, 0 );
+		wellModel = new WellPositionModel( wells, projection, width, getFirstScannedRow( height ), getLastScannedRow( height ), WELL_MODEL_MAX_DRIFT );
+
+		// ------ TRACK THE DRIFT OF EACH FRAME -------------
+
+		final int[] drifts = new int[ frameCount ];
+		ParallelLoops.forEach( frameCount, NUM_THREADS, new ParallelLoops.Body() {
+
+			@Override
+			public void run( final int f ) {
+				drifts[ f ] = wellModel.estimateDrift( wellModel.columnProfile( imgRaw, f ) );
+			}
+		} );
+
+		// ------ BUILD GROWTH LINES FROM THE MODEL -------------
+
+		this.setGrowthLines( new ArrayList< GrowthLine >( wellModel.numWells() ) );
+		for ( int i = 0; i < wellModel.numWells(); i++ ) {
+			getGrowthLines().add( new GrowthLine() );
+		}
+		for ( int f = 0; f < frameCount; f++ ) {
+			final List< GrowthLineFrame > glFrames = wellModel.createGrowthLineFrames( drifts[ f ], f );
+			for ( int i = 0; i < glFrames.size(); i++ ) {
+				getGrowthLines().get( i ).add( glFrames.get( i ) );
+			}
+		}
+		this.referenceGrowthLineFrames = wells;
+	}
+
+	/**
+	 * @return the first row of a frame with the given height that is scanned
+	 *         for growth lines (see <code>GL_OFFSET_TOP</code>).
+	 */
+	private static int getFirstScannedRow( final int height ) {
+		return Math.min( GL_OFFSET_TOP, height );
+	}
+
+	/**
+	 * @return the last row of a frame with the given height that is scanned
+	 *         for growth lines (see <code>GL_OFFSET_BOTTOM</code>).
+	 */
+	private static int getLastScannedRow( final int height ) {
+		return Math.max( -1, height - 1 - GL_OFFSET_BOTTOM );
+	}
+
+	/**
+	 * Finds the local maxima in all rows of the given (smoothed) frame that
+	 * are scanned for growth lines (see <code>GL_OFFSET_TOP</code>,
+	 * <code>GL_OFFSET_BOTTOM</code>), skipping maxima that are too lateral
+	 * (see <code>GL_OFFSET_LATERAL</code>).
+	 *
+	 * @param smoothed
+	 *            the (smoothed) frame, stored row by row.
+	 * @param width
+	 * @param height
+	 * @return the well centers found in this frame.
+	 */
+	private static RowMaxima findWellCenters( final double[] smoothed, final int width, final int height ) {
+		return RowMaxima.find( smoothed, width, height, getFirstScannedRow( height ), getLastScannedRow( height ), GL_OFFSET_LATERAL, width - GL_OFFSET_LATERAL );
+	}
+
+	/**
+	 * Assembles the given well centers of one frame into one
+	 * <code>GrowthLineFrame</code> per detected growth line.
+	 * Also adds the well centers of this frame to 'glCenterPoints'.
+	 *
+	 * @param frameWellCenters
+	 *            the well centers of this frame (see
+	 *            <code>findWellCenters</code>).
+	 * @param width
+	 *            the width of the frame.
+	 * @param frameIdx
+	 *            the index of the frame in the stack (used as z-coordinate of
+	 *            all points).
+	 * @return the found <code>GrowthLineFrame</code>s, from left to right.
+	 */
+	private List< GrowthLineFrame > findGrowthLineFrames( final RowMaxima frameWellCenters, final int width, final long frameIdx ) {
+
+		// find the row containing the most well centers
+		int maxWellCenters = 0;
+		int maxWellCentersIdx = 0;
+		for ( int y = 0; y < frameWellCenters.numRows(); y++ ) {
+			if ( maxWellCenters < frameWellCenters.size( y ) ) {
+				maxWellCenters = frameWellCenters.size( y );
+				maxWellCentersIdx = y;
+			}
+		}
+
+		// add all the points to 'glCenterPoints'
+		this.glCenterPoints.add( frameWellCenters );
+
+		// ------ DISTRIBUTE POINTS TO CORRESPONDING GROWTH LINES -------
+
+		final List< GrowthLineFrame > glFrames = new ArrayList< GrowthLineFrame >();
+
+		final Point pOrig = new Point( 3 );
+		pOrig.setPosition( frameIdx, 2 ); 	// location in original Img (will
+											// be recovered step by step)
+
+		// start at the row containing the maximum number of well centers
+		// (see above for the code that found maxWellCenter*)
+		pOrig.setPosition( maxWellCentersIdx, 1 );
+		for ( int x = 0; x < maxWellCenters; x++ ) {
+			glFrames.add( new GrowthLineFrame() ); // add one GLF for each found column
+			pOrig.setPosition( frameWellCenters.get( maxWellCentersIdx, x ), 0 );
+			glFrames.get( x ).addPoint( pOrig );
+		}
+		// now go backwards from 'maxWellCenterIdx' and find the right assignment in case
+		// a different number of wells was found (going forwards comes below!)
+		for ( int y = maxWellCentersIdx - 1; y >= 0; y-- ) {
+			pOrig.setPosition( y, 1 ); // location in orig. Img (2nd of 3 steps)
+
+			final int maximaPerImgRow = frameWellCenters.size( y );
+			if ( maximaPerImgRow == 0 ) {
+				break;
+			}
+			// find best matching well for first point
+			final int posX = frameWellCenters.get( y, 0 );
+			int mindist = width;
+			int offset = 0;
+			for ( int x = 0; x < maxWellCenters; x++ ) {
+				final int wellPosX = glFrames.get( x ).getX( 0 );
+				if ( mindist > Math.abs( wellPosX - posX ) ) {
+					mindist = Math.abs( wellPosX - posX );
+					offset = x;
+				}
+			}
+			// move points into detected wells
+			for ( int x = offset; x < maximaPerImgRow; x++ ) {
+				pOrig.setPosition( frameWellCenters.get( y, x ), 0 );
+				glFrames.get( x ).addPoint( pOrig );
+			}
+		}
+		// now go forward from 'maxWellCenterIdx' and find the right assignment in case
+		// a different number of wells was found
+		for ( int y = maxWellCentersIdx + 1; y < frameWellCenters.numRows(); y++ ) {
+			pOrig.setPosition( y, 1 ); // location in original Img (2nd of 3
+			// steps)
+
+			final int maximaPerImgRow = frameWellCenters.size( y );
+			if ( maximaPerImgRow == 0 ) {
+				break;
+			}
+			// find best matching well for first point
+			final int posX = frameWellCenters.get( y, 0 );
+			int mindist = width;
+			int offset = 0;
+			for ( int x = 0; x < maxWellCenters; x++ ) {
+				final int wellPosX = glFrames.get( x ).getX( glFrames.get( x ).size() - 1 );
+				if ( mindist > Math.abs( wellPosX - posX ) ) {
+					mindist = Math.abs( wellPosX - posX );
+					offset = x;
+				}
+			}
+			// move points into GLFs
+			for ( int x = offset; x < maximaPerImgRow; x++ ) {
+				pOrig.setPosition( frameWellCenters.get( y, x ), 0 );
+				glFrames.get( x ).addPoint( pOrig );
+			}
+		}
+		return glFrames;
+	}
+
+	/**
+	 * Determines the index of the growth line the first of the given
+	 * <code>frames</code> belongs to, by comparing against the frames of the
+	 * reference frame (the one containing the most growth lines).
+	 *
+	 * @param referenceFrames
+	 * @param frames
+	 * @return the offset to be used when copying <code>frames</code> into the
+	 *         growth lines.
+	 */
+	private int findGrowthLineOffset( final List< GrowthLineFrame > referenceFrames, final List< GrowthLineFrame > frames ) {
+		final int deltaL = referenceFrames.size() - frames.size();
+		int offset = 0;  // here we would like to have the shift to consider when copying GLFrames into GLs
+		double minDist = Double.MAX_VALUE;
+		for ( int i = 0; i <= deltaL; i++ ) {
+			double dist = referenceFrames.get( i ).getAvgXpos();
+			dist -= frames.get( 0 ).getAvgXpos();
+			if ( dist < minDist ) {
+				minDist = dist;
+				offset = i;
+			}
+		}
+		return offset;
 	}
 
 	/**
@@ -1197,6 +1863,7 @@ public class MotherMachine {
 	 * the annotation layer, <code>imgAnnotated</code>.
 	 */
 	private void annotateDetectedWellCenters() {
+		if ( imgAnnotated == null ) return;
 		for ( final GrowthLine gl : this.getGrowthLines() ) {
 			for ( final GrowthLineFrame glf : gl.getFrames() ) {
 				glf.drawCenterLine( imgAnnotated );
@@ -1204,66 +1871,269 @@ public class MotherMachine {
 		}
 	}
 
+	/**
+	 * Creates the strip stack of each growth line and fills it with the data
+	 * in 'imgRaw', smoothed by SIGMA_PRE_SEGMENTATION_*. Smoothing reads from
+	 * the full frames, hence the strips equal the corresponding columns of a
+	 * smoothed copy of 'imgRaw' -- without such a copy ever being created.
+	 */
+	private void extractGrowthLineStrips() {
+		final long margin = Math.max( BGREM_X_OFFSET, STRIP_MIN_MARGIN );
+		final boolean smooth = SIGMA_PRE_SEGMENTATION_X + SIGMA_PRE_SEGMENTATION_Y > 0.000001;
+		if ( smooth ) {
+			System.out.print( " ...Note: smoothing performed before building GapHypotheses... " );
+		}
+		final double[] sigmas = new double[ imgRaw.numDimensions() ];
+		sigmas[ 0 ] = SIGMA_PRE_SEGMENTATION_X;
+		sigmas[ 1 ] = SIGMA_PRE_SEGMENTATION_Y;
+
+		int i = 0;
+		for ( final GrowthLine gl : getGrowthLines() ) {
+			i++;
+			final PipelineMetrics.Stage stage = metrics.start( "GL#" + i, "strip" );
+			gl.createStrip( imgRaw, margin, getStackFactory() );
+			final IntervalView< DoubleType > strip = gl.getStripView();
+			if ( strip != null ) {
+				if ( smooth ) {
+					try {
+						Gauss3.gauss( sigmas, Views.extendMirrorDouble( imgRaw ), strip );
+					}
+					catch ( final IncompatibleTypeException e ) {
+						e.printStackTrace();
+					}
+				} else {
+					DataMover.copy( imgRaw, Views.iterable( strip ) );
+				}
+			}
+			stage.stop();
+		}
+	}
+
 	/**
 	 * Iterates over all found GrowthLines and evokes
 	 * GrowthLine.findGapHypotheses(Img).
-	 * Note that this function always uses the image data in 'imgTemp'.
+	 * All GLFs (of all growth lines) are independent work items and are
+	 * processed concurrently, using NUM_THREADS threads.
+	 * Note that this function uses the image data in the strips of the
+	 * growth lines (see <code>extractGrowthLineStrips</code>), or the cached
+	 * gap separation values if no strips were extracted.
+	 *
+	 * @throws Exception
+	 *             the first exception thrown while processing a GLF.
+	 */
+	public void generateSegmentationHypotheses() throws Exception {
+
+		// ------ DETECTION --------------------------
+
+		final List< GrowthLine > gls = getGrowthLines();
+		int numItems = 0;
+		for ( final GrowthLine gl : gls ) {
+			numItems += gl.size();
+		}
+		final int[] itemGL = new int[ numItems ];
+		final int[] itemFrame = new int[ numItems ];
+		final AtomicIntegerArray remaining = new AtomicIntegerArray( gls.size() );
+		final List< IntervalView< DoubleType > > stripViews = new ArrayList< IntervalView< DoubleType > >( gls.size() );
+		int k = 0;
+		for ( int i = 0; i < gls.size(); i++ ) {
+			for ( int t = 0; t < gls.get( i ).size(); t++ ) {
+				itemGL[ k ] = i;
+				itemFrame[ k ] = t;
+				k++;
+			}
+			remaining.set( i, gls.get( i ).size() );
+			stripViews.add( gls.get( i ).getStripView() );
+		}
+
+		System.out.println( "" );
+		System.out.println( "   Working on " + numItems + " GLFs of " + gls.size() + " GLs (using " + NUM_THREADS + " threads)... " );
+		ParallelLoops.forEach( numItems, NUM_THREADS, new ParallelLoops.Body() {
+
+			@Override
+			public void run( final int item ) {
+				final GrowthLine gl = gls.get( itemGL[ item ] );
+				final GrowthLineFrame glf = gl.get( itemFrame[ item ] );
+				gl.computeGapSeparationValues( glf );
+				glf.generateSegmentationHypotheses( stripViews.get( itemGL[ item ] ) );
+				if ( remaining.decrementAndGet( itemGL[ item ] ) == 0 ) {
+					System.out.println( "   ...GL#" + ( itemGL[ item ] + 1 ) + " of " + gls.size() + " done!" );
+				}
+			}
+		} );
+	}
+
+	/**
+	 * Processes one additional frame that was not part of the folder processed
+	 * by <code>processDataFromFolder</code> (e.g. because it was acquired
+	 * later). The frame is straightened and cropped like all other frames.
+	 * Only in this frame growth lines are detected, background is removed, and
+	 * the smoothed frame is appended to the strip stacks of all growth lines
+	 * (and to imgRaw, if still present). Segmentation hypotheses are built for
+	 * the new GLFs. Each found GLF is appended to its <code>GrowthLine</code>,
+	 * all other growth lines get an empty GLF for this frame.
+	 * Note: the annotation image (imgAnnotated) is not extended, strips are
+	 * not widened, and growth lines must have been detected in this run (not
+	 * loaded from the stage cache).
+	 *
+	 * @param file
+	 *            the tiff file containing the new frame.
+	 * @return the growth lines that were found in the new frame (all others
+	 *         were extended by an empty GLF).
+	 * @throws Exception
+	 *             if the given file could not be loaded.
 	 */
-	public void generateSegmentationHypotheses() {
+	public List< GrowthLine > processAdditionalFrame( final File file ) throws Exception {
+		final long frameIdx = numFrames;
+
+		// straighten and crop
+		final Img< DoubleType > frame = new ArrayImgFactory< DoubleType >().create( frameDims, new DoubleType() );
+		straightenAndCropSlice( DoubleTypeImgLoader.loadNormalizedTiff( file ), frame );
+
+		// find GLFs in the new frame
+		final List< GrowthLineFrame > glFrames;
+		if ( wellModel != null ) {
+			glFrames = wellModel.createGrowthLineFrames( wellModel.estimateDrift( wellModel.columnProfile( frame ) ), frameIdx );
+		} else {
+			final int width = ( int ) frameDims[ 0 ];
+			final int height = ( int ) frameDims[ 1 ];
+			final double[] smoothed = new double[ width * height ];
+			new SeparableGaussian2D( SIGMA_GL_DETECTION_X, SIGMA_GL_DETECTION_Y ).convolve( frame, smoothed, getFirstScannedRow( height ), getLastScannedRow( height ) );
+			glFrames = findGrowthLineFrames( findWellCenters( smoothed, width, height ), width, frameIdx );
+		}
+
+		// sort them into the growth lines
+		final GrowthLineFrame[] newGLFs = new GrowthLineFrame[ getGrowthLines().size() ];
+		if ( glFrames.size() > 0 ) {
+			final int offset = findGrowthLineOffset( referenceGrowthLineFrames, glFrames );
+			for ( int i = 0; i < glFrames.size(); i++ ) {
+				if ( offset + i >= getGrowthLines().size() ) {
+					System.out.println( "WARNING: more GrowthLines found in frame " + frameIdx + " than in the reference frame -- ignoring the additional ones!" );
+					break;
+				}
+				newGLFs[ offset + i ] = glFrames.get( i );
+			}
+		}
+		// growth lines not found in this frame get an empty GLF (keeps the frame indices of all growth lines aligned)
+		final List< GrowthLine > extendedGLs = new ArrayList< GrowthLine >();
+		final int[] glXs = new int[ newGLFs.length ];
+		for ( int i = 0; i < newGLFs.length; i++ ) {
+			final GrowthLine gl = getGrowthLines().get( i );
+			if ( newGLFs[ i ] == null ) {
+				gl.add( new GrowthLineFrame() );
+				glXs[ i ] = -1;
+			} else {
+				gl.add( newGLFs[ i ] );
+				extendedGLs.add( gl );
+				glXs[ i ] = newGLFs[ i ].getAvgXpos();
+			}
+		}
 
-		// ------ GAUSS -----------------------------
+		// subtract background around the new GLFs (like subtractBackgroundInRaw)
+		new BackgroundSubtractor( BGREM_TEMPLATE_XMIN, BGREM_TEMPLATE_XMAX, BGREM_X_OFFSET ).subtract( frame, glXs );
+		if ( imgRaw != null ) {
+			imgRaw = getStackFactory().appendSlice( imgRaw, frame );
+		}
+		numFrames++;
 
+		// append to the strips (smoothed like all other frames)
+		final Img< DoubleType > tempFrame = frame.copy();
 		if ( SIGMA_PRE_SEGMENTATION_X + SIGMA_PRE_SEGMENTATION_Y > 0.000001 ) {
-			System.out.print( " ...Note: smoothing performed before building GapHypotheses... " );
-			final int n = imgTemp.numDimensions();
-			final double[] sigmas = new double[ n ];
-			sigmas[ 0 ] = SIGMA_PRE_SEGMENTATION_X;
-			sigmas[ 1 ] = SIGMA_PRE_SEGMENTATION_Y;
 			try {
-				Gauss3.gauss( sigmas, Views.extendMirrorDouble( imgTemp ), imgTemp );
+				Gauss3.gauss( new double[] { SIGMA_PRE_SEGMENTATION_X, SIGMA_PRE_SEGMENTATION_Y }, Views.extendMirrorDouble( tempFrame ), tempFrame );
 			}
 			catch ( final IncompatibleTypeException e ) {
 				e.printStackTrace();
 			}
 		}
-
-		// ------ DETECTION --------------------------
-
-		System.out.println( "" );
-		int i = 0;
 		for ( final GrowthLine gl : getGrowthLines() ) {
-			i++;
-			System.out.print( "   Working on GL#" + i + " of " + getGrowthLines().size() + "... " );
-			for ( final GrowthLineFrame glf : gl.getFrames() ) {
-				System.out.print( "." );
-				glf.generateSegmentationHypotheses( imgTemp );
-			}
-			System.out.println( " ...done!" );
+			gl.appendToStrip( tempFrame, getStackFactory() );
+		}
+
+		// segmentation hypotheses for the new GLFs only
+		for ( final GrowthLine gl : extendedGLs ) {
+			gl.computeGapSeparationValues();
+			gl.get( gl.size() - 1 ).generateSegmentationHypotheses( gl.getStripView() );
 		}
+
+		return extendedGLs;
 	}
 
 	/**
-	 * Creates and triggers filling of mmILP, containing all
+	 * Creates and runs the ILPs of all growth lines, containing all
 	 * optimization-related structures used to compute the optimal tracking.
+	 * Independent ILPs are built and solved concurrently.
+	 *
+	 * @param ilpThreadBudget
+	 *            total number of gurobi threads all ILPs together may use.
+	 * @param logFolder
+	 *            the folder the gurobi logs are written to.
+	 * @throws GRBException
+	 *             if gurobi could not be initialized.
+	 * @throws ExecutionException
+	 *             if the ILP of any growth line could not be built or solved.
 	 */
-	private void generateILPs() {
-//		for ( final GrowthLine gl : getGrowthLines() ) {
-//			gl.generateILP();
-//		}
-//		getGrowthLines().get( 0 ).generateILP();
+	private void generateAndRunILPs( final int ilpThreadBudget, final File logFolder ) throws GRBException, ExecutionException {
+		final PipelineMetrics.Stage stage = metrics.start( "ilp build+solve" );
+		synchronized ( this ) {
+			disposeILPs();
+			ilpScheduler = new GrowthLineTrackingILPScheduler( ilpThreadBudget, metrics, logFolder );
+		}
+		ilpScheduler.buildAndRun( getGrowthLines(), false );
+		stage.stop();
 	}
 
 	/**
-	 * Runs all the generated ILPs.
+	 * Writes the cell counts of all growth lines (as given by
+	 * <code>GrowthLine.getDataVector()</code>) into the given file (CSV).
+	 * Growth lines without ILP will be exported as columns of '?'. If no
+	 * growth line was detected, only the header line and a total count of 0
+	 * are written.
+	 *
+	 * @param file
+	 *            the file to write to.
+	 * @return the total cell count (sum of the last cell count of each GL).
+	 * @throws IOException
 	 */
-	private void runILPs() {
-//		int i = 0;
-//		for ( final GrowthLine gl : getGrowthLines() ) {
-//			System.out.println( " > > > > > Starting LP for GL# " + i + " < < < < < " );
-//			gl.runILP();
-//			i++;
-//		}
-//		getGrowthLines().get( 0 ).runILP();
+	public int exportCellCounts( final File file ) throws IOException {
+		final Vector< Vector< String >> dataToExport = new Vector< Vector< String >>();
+		for ( final GrowthLine gl : getGrowthLines() ) {
+			dataToExport.add( gl.getDataVector() );
+		}
+
+		final Writer out = new OutputStreamWriter( new FileOutputStream( file ) );
+		try {
+			// writing header line (one column per frame, also if no GL was found)
+			int rowNum = 0;
+			out.write( ", " );
+			for ( int colNum = 0; colNum < numFrames; colNum++ ) {
+				out.write( String.format( "t=%d, ", rowNum ) );
+				rowNum++;
+			}
+			out.write( "\n" );
+			// writing GL-data-rows
+			int totalCellCount = 0;
+			for ( final Vector< String > rowInData : dataToExport ) {
+				rowNum++;
+				out.write( String.format( "GL%d, ", rowNum ) );
+				int lastValue = 0;
+				for ( final String datum : rowInData ) {
+					out.write( datum + ", " );
+					try {
+						lastValue = Integer.parseInt( datum );
+					}
+					catch ( final NumberFormatException nfe ) {
+						lastValue = 0;
+					}
+				}
+				totalCellCount += lastValue;
+				out.write( "\n" );
+			}
+			out.write( "\nTotal cell count:, " + totalCellCount );
+			return totalCellCount;
+		}
+		finally {
+			out.close();
+		}
 	}
 
 }
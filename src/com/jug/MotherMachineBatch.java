@@ -0,0 +1,314 @@
+/**
+ *
+ */
+package com.jug;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import loci.formats.ImageReader;
+
+import com.jug.util.DoubleTypeImgLoader;
+
+/**
+ * Processes many positions (one tiff folder each) without GUI.
+ * Several positions are processed concurrently. Before a position is started
+ * its heap footprint is estimated from image dimensions and frame count, and
+ * the position is only admitted once enough of the heap budget is available.
+ * Per position, cell counts and metrics are written into
+ * '&lt;output-folder&gt;/&lt;index&gt;_&lt;position-folder-name&gt;/' (the
+ * index makes positions with equal folder names in different parents
+ * distinct), a consolidated 'summary.csv' is written into the output folder.
+ *
+ * Usage:
+ * <code>-batch &lt;output-folder&gt; &lt;tiff-folder | folder-list.txt&gt;...</code>
+ * where a folder list is a text file containing one tiff folder per line.
+ *
+ * @author jug
+ */
+public class MotherMachineBatch {
+
+	// -------------------------------------------------------------------------------------
+	// statics
+	// -------------------------------------------------------------------------------------
+	/**
+	 * Fraction of the max heap that may be promised to admitted positions.
+	 */
+	private static final double HEAP_BUDGET_FRACTION = 0.8;
+
+	/**
+	 * Estimated peak heap bytes per input pixel are computed from the heap
+	 * bytes per stored stack pixel (see <code>MotherMachine.PIXEL_TYPE</code>
+	 * and <code>MotherMachine.STORAGE_MODE</code>). Steady state holds imgRaw
+	 * and the strips of all growth lines (together at most as large as
+	 * imgRaw) plus some slack. In non-streaming mode, preprocessing
+	 * additionally holds up to three extra stacks while loading, straightening
+	 * and cropping.
+	 */
+	private static final int STACKS_STREAMING = 2;
+	private static final int STACKS_IN_MEMORY = 5;
+	private static final int BYTES_PER_PIXEL_OVERHEAD_STREAMING = 8;
+	private static final int BYTES_PER_PIXEL_OVERHEAD_IN_MEMORY = 4;
+
+	private static final int MB = 1024 * 1024;
+
+	// -------------------------------------------------------------------------------------
+	// inner classes
+	// -------------------------------------------------------------------------------------
+	/**
+	 * Result of processing one position (one line in 'summary.csv').
+	 */
+	private static class PositionResult {
+
+		String folder;
+		String outputName;
+		String status = "failed";
+		long width = -1;
+		long height = -1;
+		long frames = -1;
+		long estimatedMB = -1;
+		int numGLs = -1;
+		int totalCellCount = -1;
+		double seconds = -1;
+	}
+
+	// -------------------------------------------------------------------------------------
+	// methods
+	// -------------------------------------------------------------------------------------
+	/**
+	 * Entry point for the batch mode.
+	 *
+	 * @param args
+	 *            the command line arguments (args[0] is '-batch').
+	 */
+	public static void run( final String[] args ) {
+		if ( args.length < 3 ) {
+			System.err.println( "Usage: MotherMachine -batch <output-folder> <tiff-folder | folder-list.txt>..." );
+			System.exit( 1 );
+		}
+
+		final File outputFolder = new File( args[ 1 ] );
+		if ( !outputFolder.exists() && !outputFolder.mkdirs() ) {
+			System.err.println( "Output folder '" + outputFolder.getAbsolutePath() + "' could not be created!" );
+			System.exit( 1 );
+		}
+
+		final List< String > folders = new ArrayList< String >();
+		for ( int i = 2; i < args.length; i++ ) {
+			final File f = new File( args[ i ] );
+			if ( f.isFile() ) {
+				try {
+					folders.addAll( readFolderList( f ) );
+				}
+				catch ( final IOException e ) {
+					System.err.println( "Folder list '" + f.getAbsolutePath() + "' could not be read!" );
+					e.printStackTrace();
+					System.exit( 1 );
+				}
+			} else {
+				folders.add( f.getAbsolutePath() );
+			}
+		}
+
+		MotherMachine.initHeadless();
+
+		final List< PositionResult > results = processAll( folders, outputFolder );
+
+		final File summaryFile = new File( outputFolder, "summary.csv" );
+		try {
+			writeSummary( results, summaryFile );
+			System.out.println( "Batch summary written to '" + summaryFile.getAbsolutePath() + "'." );
+		}
+		catch ( final IOException e ) {
+			System.err.println( "Summary could not be written to '" + summaryFile.getAbsolutePath() + "'!" );
+			e.printStackTrace();
+			System.exit( 1 );
+		}
+	}
+
+	/**
+	 * Processes all given positions on a bounded pool, admitting each position
+	 * only if its estimated heap footprint fits into the remaining heap budget.
+	 *
+	 * @param folders
+	 * @param outputFolder
+	 * @return one result per given folder (in the given order).
+	 */
+	private static List< PositionResult > processAll( final List< String > folders, final File outputFolder ) {
+		final int budgetMB = ( int ) Math.max( 1, ( Runtime.getRuntime().maxMemory() * HEAP_BUDGET_FRACTION ) / MB );
+		final Semaphore heapBudget = new Semaphore( budgetMB, true );
+
+		final int numWorkers = Math.max( 1, Math.min( MotherMachine.BATCH_MAX_PARALLEL_POSITIONS, folders.size() ) );
+		final int ilpThreadBudget = Math.max( 1, MotherMachine.ILP_THREAD_BUDGET / numWorkers );
+		// all positions of this process share the same preprocessing thread budget
+		MotherMachine.NUM_THREADS = Math.max( 1, MotherMachine.NUM_THREADS / numWorkers );
+		System.out.println( String.format( "Batch: %d positions, up to %d in parallel (%d threads each), heap budget %d MB.", folders.size(), numWorkers, MotherMachine.NUM_THREADS, budgetMB ) );
+
+		final ExecutorService pool = Executors.newFixedThreadPool( numWorkers );
+		final List< Future< PositionResult > > futures = new ArrayList< Future< PositionResult > >();
+		for ( int i = 0; i < folders.size(); i++ ) {
+			final String folder = folders.get( i );
+			final String outputName = getOutputName( i, folder );
+			futures.add( pool.submit( new Callable< PositionResult >() {
+
+				@Override
+				public PositionResult call() throws Exception {
+					return processPosition( folder, outputName, outputFolder, heapBudget, budgetMB, ilpThreadBudget );
+				}
+			} ) );
+		}
+		pool.shutdown();
+
+		final List< PositionResult > results = new ArrayList< PositionResult >();
+		for ( int i = 0; i < futures.size(); i++ ) {
+			try {
+				results.add( futures.get( i ).get() );
+			}
+			catch ( final InterruptedException e ) {
+				e.printStackTrace();
+			}
+			catch ( final ExecutionException e ) {
+				if ( e.getCause() instanceof Error ) { throw ( Error ) e.getCause(); }
+				e.printStackTrace();
+				final PositionResult failed = new PositionResult();
+				failed.folder = folders.get( i );
+				failed.outputName = getOutputName( i, folders.get( i ) );
+				results.add( failed );
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * @return the name of the folder (within the output folder) the results
+	 *         of the position with the given index are written to.
+	 */
+	private static String getOutputName( final int index, final String folder ) {
+		return String.format( "%03d_%s", index, new File( folder ).getName() );
+	}
+
+	/**
+	 * Processes a single position once enough heap budget is available.
+	 */
+	private static PositionResult processPosition( final String folder, final String outputName, final File outputFolder, final Semaphore heapBudget, final int budgetMB, final int ilpThreadBudget ) {
+		final PositionResult result = new PositionResult();
+		result.folder = folder;
+		result.outputName = outputName;
+
+		try {
+			final File[] tiffs = DoubleTypeImgLoader.listTiffsInFolder( folder );
+			if ( tiffs.length == 0 ) {
+				result.status = "no tiffs";
+				return result;
+			}
+			final ImageReader reader = new ImageReader();
+			try {
+				reader.setId( tiffs[ 0 ].getAbsolutePath() );
+				result.width = reader.getSizeX();
+				result.height = reader.getSizeY();
+			}
+			finally {
+				reader.close();
+			}
+			result.frames = tiffs.length;
+		}
+		catch ( final Exception e ) {
+			System.out.println( "Batch: could not inspect '" + folder + "'!" );
+			e.printStackTrace();
+			return result;
+		}
+
+		final int stackBytesPerPixel = MotherMachine.getStackFactory().getHeapBytesPerPixel();
+		final int bytesPerPixel = MotherMachine.STREAMING_PREPROCESSING ? STACKS_STREAMING * stackBytesPerPixel + BYTES_PER_PIXEL_OVERHEAD_STREAMING : STACKS_IN_MEMORY * stackBytesPerPixel + BYTES_PER_PIXEL_OVERHEAD_IN_MEMORY;
+		result.estimatedMB = ( result.width * result.height * result.frames * bytesPerPixel ) / MB + 1;
+		// positions larger than the whole budget get the whole budget (and run alone)
+		final int permits = ( int ) Math.min( result.estimatedMB, budgetMB );
+
+		heapBudget.acquireUninterruptibly( permits );
+		MotherMachine mm = null;
+		try {
+			System.out.println( String.format( "Batch: starting '%s' (estimated %d MB)...", folder, result.estimatedMB ) );
+			final long start = System.nanoTime();
+
+			final File positionFolder = new File( outputFolder, outputName );
+			positionFolder.mkdirs();
+
+			mm = new MotherMachine();
+			result.totalCellCount = mm.processAndExport( folder, new File( positionFolder, "MotherMachineCellCounts.csv" ), ilpThreadBudget );
+			result.numGLs = mm.getGrowthLines().size();
+			result.seconds = ( System.nanoTime() - start ) / 1e9;
+			result.status = "ok";
+			System.out.println( String.format( "Batch: '%s' done after %.1f s.", folder, result.seconds ) );
+		}
+		catch ( final IOException e ) {
+			System.out.println( "Batch: results of '" + folder + "' could not be written!" );
+			e.printStackTrace();
+		}
+		catch ( final OutOfMemoryError e ) {
+			result.status = "out of memory";
+			System.out.println( "Batch: '" + folder + "' ran out of memory!" );
+		}
+		catch ( final Exception e ) {
+			System.out.println( "Batch: processing of '" + folder + "' failed!" );
+			e.printStackTrace();
+		}
+		finally {
+			if ( mm != null ) {
+				mm.disposeILPs();
+			}
+			heapBudget.release( permits );
+		}
+		return result;
+	}
+
+	/**
+	 * Reads a text file containing one folder per line. Empty lines and lines
+	 * starting with '#' are ignored.
+	 */
+	private static List< String > readFolderList( final File file ) throws IOException {
+		final List< String > folders = new ArrayList< String >();
+		final BufferedReader in = new BufferedReader( new FileReader( file ) );
+		try {
+			String line;
+			while ( ( line = in.readLine() ) != null ) {
+				line = line.trim();
+				if ( line.length() > 0 && !line.startsWith( "#" ) ) {
+					folders.add( new File( line ).getAbsolutePath() );
+				}
+			}
+		}
+		finally {
+			in.close();
+		}
+		return folders;
+	}
+
+	/**
+	 * Writes one line per position into the given CSV-file.
+	 */
+	private static void writeSummary( final List< PositionResult > results, final File file ) throws IOException {
+		final Writer out = new OutputStreamWriter( new FileOutputStream( file ) );
+		try {
+			out.write( "folder, output_folder, status, width, height, frames, estimated_MB, GLs, total_cell_count, seconds\n" );
+			for ( final PositionResult r : results ) {
+				out.write( String.format( "%s, %s, %s, %d, %d, %d, %d, %d, %d, %.1f\n", r.folder, r.outputName, r.status, r.width, r.height, r.frames, r.estimatedMB, r.numGLs, r.totalCellCount, r.seconds ) );
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+}
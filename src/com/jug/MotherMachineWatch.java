@@ -0,0 +1,202 @@
+/**
+ *
+ */
+package com.jug;
+
+import gurobi.GRB;
+import gurobi.GRBException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.jug.util.DoubleTypeImgLoader;
+import com.jug.util.PipelineMetrics;
+
+/**
+ * Live acquisition mode: watches a tiff folder that is still being written to
+ * by the microscope.
+ * All frames already present are processed like in the headless mode. Each
+ * frame arriving later is processed on its own: its GLFs are appended to the
+ * growth lines and the existing ILPs are extended by this one time-point and
+ * re-solved, starting from the previous solution. After each frame the cell
+ * counts are re-exported.
+ *
+ * Usage: <code>-watch &lt;tiff-folder&gt; [&lt;csv-file&gt;]</code>
+ * The watch mode runs until the process gets terminated.
+ *
+ * @author jug
+ */
+public class MotherMachineWatch {
+
+	// -------------------------------------------------------------------------------------
+	// statics
+	// -------------------------------------------------------------------------------------
+	/**
+	 * Time (in ms) a new file must not change its size before it is
+	 * considered to be completely written.
+	 */
+	private static final long FILE_STABLE_MILLIS = 500;
+
+	// -------------------------------------------------------------------------------------
+	// methods
+	// -------------------------------------------------------------------------------------
+	/**
+	 * Entry point for the watch mode.
+	 *
+	 * @param args
+	 *            the command line arguments (args[0] is '-watch').
+	 */
+	public static void run( final String[] args ) {
+		if ( args.length < 2 ) {
+			System.err.println( "Usage: MotherMachine -watch <tiff-folder> [<csv-file>]" );
+			System.exit( 1 );
+		}
+		final File folder = new File( args[ 1 ] ).getAbsoluteFile();
+		final File csvFile = ( args.length > 2 ) ? new File( args[ 2 ] ) : new File( folder, "MotherMachineCellCounts.csv" );
+
+		MotherMachine.initHeadless();
+		if ( MotherMachine.STAGE_CACHE_ENABLED ) {
+			// cached growth lines would lack what is needed to sort in new frames
+			System.out.println( "Note: the stage cache is not used in watch mode." );
+			MotherMachine.STAGE_CACHE_ENABLED = false;
+		}
+
+		try {
+			final WatchService watcher = FileSystems.getDefault().newWatchService();
+			final Path dir = folder.toPath();
+			dir.register( watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY );
+
+			// wait for the first frame(s)
+			List< File > newFiles = listNewTiffs( folder, new HashSet< String >() );
+			while ( newFiles.isEmpty() ) {
+				System.out.println( "Waiting for tiffs in '" + folder.getAbsolutePath() + "'..." );
+				watcher.take().reset();
+				newFiles = listNewTiffs( folder, new HashSet< String >() );
+			}
+			for ( final File file : newFiles ) {
+				waitUntilWritten( file );
+			}
+
+			// process all frames present so far
+			final Set< String > processed = new HashSet< String >();
+			for ( final File file : DoubleTypeImgLoader.listTiffsInFolder( folder.getAbsolutePath() ) ) {
+				processed.add( file.getName() );
+			}
+			final MotherMachine mm = new MotherMachine();
+			mm.processAndExport( folder.getAbsolutePath(), csvFile, MotherMachine.ILP_THREAD_BUDGET );
+			setIlpThreads( mm.getGrowthLines(), MotherMachine.ILP_THREAD_BUDGET );
+
+			// process each frame that arrives later
+			while ( true ) {
+				System.out.println( "Watching '" + folder.getAbsolutePath() + "' for new frames..." );
+				final WatchKey key = watcher.take();
+				key.pollEvents(); // the folder is rescanned anyways (covers lost events)
+
+				for ( final File file : listNewTiffs( folder, processed ) ) {
+					waitUntilWritten( file );
+					processed.add( file.getName() );
+					processFrame( mm, file, csvFile );
+				}
+
+				if ( !key.reset() ) {
+					System.err.println( "Folder '" + folder.getAbsolutePath() + "' is not accessible any more!" );
+					System.exit( 1 );
+				}
+			}
+		}
+		catch ( final UnsatisfiedLinkError ulr ) {
+			System.err.println( "Could not initialize Gurobi.\n" +
+					"You might not have installed Gurobi properly or you miss a valid license.\n" +
+					"Please visit 'www.gurobi.com' for further information.\n\n" +
+					ulr.getMessage() );
+			System.exit( 1 );
+		}
+		catch ( final InterruptedException e ) {
+			System.out.println( "Watch mode interrupted." );
+		}
+		catch ( final Exception e ) {
+			e.printStackTrace();
+			System.exit( 1 );
+		}
+	}
+
+	/**
+	 * Appends the given frame to all growth lines (growth lines not found in
+	 * it get an empty GLF), extends and re-solves all ILPs, and re-exports
+	 * the cell counts.
+	 */
+	private static void processFrame( final MotherMachine mm, final File file, final File csvFile ) throws Exception {
+		System.out.print( "Processing new frame '" + file.getName() + "'..." );
+		PipelineMetrics.Stage stage = mm.getMetrics().start( "live frame" );
+		final List< GrowthLine > extendedGLs = mm.processAdditionalFrame( file );
+		stage.stop();
+		System.out.println( " done!" );
+
+		// growth lines not found in the new frame got an empty GLF, their ILPs need to be extended as well
+		System.out.print( "Extending and re-solving " + mm.getGrowthLines().size() + " ILPs (" + extendedGLs.size() + " GLs found in the new frame)..." );
+		stage = mm.getMetrics().start( "live ilp" );
+		for ( final GrowthLine gl : mm.getGrowthLines() ) {
+			if ( gl.getIlp() == null ) continue;
+			gl.getIlp().addLastTimeStep();
+			gl.runILP();
+		}
+		stage.stop();
+		System.out.println( " done!" );
+
+		final int totalCellCount = mm.exportCellCounts( csvFile );
+		System.out.println( String.format( "Frame %d: total cell count %d (written to '%s').", mm.getNumFrames() - 1, totalCellCount, csvFile.getAbsolutePath() ) );
+	}
+
+	/**
+	 * The ILPs are re-solved one after the other, hence each of them may use
+	 * the whole thread budget.
+	 */
+	private static void setIlpThreads( final List< GrowthLine > gls, final int threads ) {
+		for ( final GrowthLine gl : gls ) {
+			if ( gl.getIlp() == null ) continue;
+			try {
+				gl.getIlp().model.getEnv().set( GRB.IntParam.Threads, threads );
+			}
+			catch ( final GRBException e ) {
+				System.out.println( "Could not set gurobi thread limit!" );
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return all tiffs in the given folder whose names are not contained in
+	 *         <code>known</code>, in natural order.
+	 */
+	private static List< File > listNewTiffs( final File folder, final Set< String > known ) throws Exception {
+		final List< File > ret = new ArrayList< File >();
+		for ( final File file : DoubleTypeImgLoader.listTiffsInFolder( folder.getAbsolutePath() ) ) {
+			if ( !known.contains( file.getName() ) ) {
+				ret.add( file );
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Blocks until the size of the given file did not change for
+	 * <code>FILE_STABLE_MILLIS</code>.
+	 */
+	private static void waitUntilWritten( final File file ) throws InterruptedException, IOException {
+		long size = -1;
+		while ( size != file.length() ) {
+			if ( !file.exists() ) throw new IOException( "File '" + file.getAbsolutePath() + "' vanished!" );
+			size = file.length();
+			Thread.sleep( FILE_STABLE_MILLIS );
+		}
+	}
+}
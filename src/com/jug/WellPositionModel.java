@@ -0,0 +1,262 @@
+/**
+ *
+ */
+package com.jug;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.view.Views;
+
+import com.jug.loops.ParallelLoops;
+
+/**
+ * Well positions on the chip barely change during an experiment. This model
+ * holds the center lines of all wells, detected once (e.g. on a temporal
+ * projection of all frames), plus the column profile (average intensity per
+ * column over all scanned rows) they were detected on.
+ * The wells of a single frame are then obtained by estimating the horizontal
+ * drift of this frame -- the shift that best aligns its column profile with
+ * the reference profile -- and shifting all center lines accordingly.
+ *
+ * @author jug
+ */
+public class WellPositionModel {
+
+	// -------------------------------------------------------------------------------------
+	// fields
+	// -------------------------------------------------------------------------------------
+	/**
+	 * The center line points of all wells (from left to right): the i-th
+	 * point of well w is at <code>(centerLinesX[w][i], centerLinesY[w][i])</code>.
+	 */
+	private final int[][] centerLinesX;
+	private final int[][] centerLinesY;
+	/**
+	 * Mean-free column profile of the frame the wells were detected in.
+	 */
+	private final double[] referenceProfile;
+	private final int width;
+	private final int yMin;
+	private final int yMax;
+	private final int maxDrift;
+
+	// -------------------------------------------------------------------------------------
+	// construction
+	// -------------------------------------------------------------------------------------
+	/**
+	 * @param wells
+	 *            the wells detected in <code>reference</code>, from left to
+	 *            right.
+	 * @param reference
+	 *            the (unsmoothed) frame the wells were detected in, stored row
+	 *            by row.
+	 * @param width
+	 * @param yMin
+	 *            first row used for column profiles.
+	 * @param yMax
+	 *            last row used for column profiles.
+	 * @param maxDrift
+	 *            the maximal horizontal drift (in pixels) of a frame with
+	 *            respect to <code>reference</code>.
+	 */
+	public WellPositionModel( final List< GrowthLineFrame > wells, final double[] reference, final int width, final int yMin, final int yMax, final int maxDrift ) {
+		this.width = width;
+		this.yMin = yMin;
+		this.yMax = yMax;
+		this.maxDrift = maxDrift;
+
+		centerLinesX = new int[ wells.size() ][];
+		centerLinesY = new int[ wells.size() ][];
+		for ( int w = 0; w < wells.size(); w++ ) {
+			final GrowthLineFrame well = wells.get( w );
+			centerLinesX[ w ] = new int[ well.size() ];
+			centerLinesY[ w ] = new int[ well.size() ];
+			for ( int i = 0; i < well.size(); i++ ) {
+				centerLinesX[ w ][ i ] = well.getX( i );
+				centerLinesY[ w ][ i ] = well.getY( i );
+			}
+		}
+		referenceProfile = columnProfile( reference, 0 );
+	}
+
+	// -------------------------------------------------------------------------------------
+	// methods
+	// -------------------------------------------------------------------------------------
+	/**
+	 * @return the number of wells in this model.
+	 */
+	public int numWells() {
+		return centerLinesX.length;
+	}
+
+	/**
+	 * Computes the average over all frames of the given stack.
+	 *
+	 * @param stack
+	 *            a zero-min 3d stack.
+	 * @param numThreads
+	 *            number of threads to be used.
+	 * @return the temporal mean projection, stored row by row.
+	 * @throws Exception
+	 */
+	@SuppressWarnings( "unchecked" )
+	public static double[] meanProjection( final Img< DoubleType > stack, final int numThreads ) throws Exception {
+		final int w = ( int ) stack.dimension( 0 );
+		final int h = ( int ) stack.dimension( 1 );
+		final int numFrames = ( int ) stack.dimension( 2 );
+		final double[] ret = new double[ w * h ];
+
+		if ( stack instanceof ArrayImg && ( ( ArrayImg< DoubleType, ? > ) stack ).update( null ) instanceof DoubleArray ) {
+			final double[] data = ( ( ArrayImg< DoubleType, DoubleArray > ) stack ).update( null ).getCurrentStorageArray();
+			// rows are independent
+			ParallelLoops.forEach( h, numThreads, new ParallelLoops.Body() {
+
+				@Override
+				public void run( final int y ) {
+					for ( int z = 0; z < numFrames; z++ ) {
+						final int row = z * w * h + y * w;
+						for ( int x = 0; x < w; x++ ) {
+							ret[ y * w + x ] += data[ row + x ];
+						}
+					}
+				}
+			} );
+		} else {
+			final Cursor< DoubleType > cursor = stack.localizingCursor();
+			while ( cursor.hasNext() ) {
+				cursor.fwd();
+				ret[ cursor.getIntPosition( 0 ) + cursor.getIntPosition( 1 ) * w ] += cursor.get().get();
+			}
+		}
+
+		for ( int i = 0; i < ret.length; i++ ) {
+			ret[ i ] /= numFrames;
+		}
+		return ret;
+	}
+
+	/**
+	 * @param stack
+	 *            a zero-min 3d stack (of the width of this model).
+	 * @param z
+	 *            the frame to compute the column profile of.
+	 * @return the mean-free column profile of frame <code>z</code>.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public double[] columnProfile( final Img< DoubleType > stack, final long z ) {
+		if ( stack instanceof ArrayImg && ( ( ArrayImg< DoubleType, ? > ) stack ).update( null ) instanceof DoubleArray ) {
+			final double[] data = ( ( ArrayImg< DoubleType, DoubleArray > ) stack ).update( null ).getCurrentStorageArray();
+			return columnProfile( data, ( int ) ( z * width * stack.dimension( 1 ) ) );
+		}
+		return columnProfile( Views.hyperSlice( stack, 2, z ) );
+	}
+
+	/**
+	 * @param frame
+	 *            a zero-min 2d frame (of the width of this model).
+	 * @return the mean-free column profile of the given frame.
+	 */
+	public double[] columnProfile( final RandomAccessibleInterval< DoubleType > frame ) {
+		final double[] ret = new double[ width ];
+		if ( yMin > yMax ) return ret;
+		final Cursor< DoubleType > cursor = Views.iterable( Views.interval( frame, new long[] { 0, yMin }, new long[] { width - 1, yMax } ) ).localizingCursor();
+		while ( cursor.hasNext() ) {
+			cursor.fwd();
+			ret[ cursor.getIntPosition( 0 ) ] += cursor.get().get();
+		}
+		return makeMeanFree( ret );
+	}
+
+	/**
+	 * @return the mean-free column profile of a frame stored row by row in
+	 *         <code>data</code>, starting at <code>offset</code>.
+	 */
+	private double[] columnProfile( final double[] data, final int offset ) {
+		final double[] ret = new double[ width ];
+		for ( int y = yMin; y <= yMax; y++ ) {
+			final int row = offset + y * width;
+			for ( int x = 0; x < width; x++ ) {
+				ret[ x ] += data[ row + x ];
+			}
+		}
+		return makeMeanFree( ret );
+	}
+
+	/**
+	 * Subtracts the mean of the given profile from all its values (in place).
+	 */
+	private static double[] makeMeanFree( final double[] profile ) {
+		double mean = 0;
+		for ( final double v : profile ) {
+			mean += v;
+		}
+		mean /= profile.length;
+		for ( int x = 0; x < profile.length; x++ ) {
+			profile[ x ] -= mean;
+		}
+		return profile;
+	}
+
+	/**
+	 * Finds the horizontal shift (within <code>[-maxDrift,maxDrift]</code>)
+	 * that maximizes the (per column averaged) correlation between the given
+	 * profile and the reference profile. Among equally good shifts the
+	 * smallest one wins.
+	 *
+	 * @param profile
+	 *            a mean-free column profile (see <code>columnProfile</code>).
+	 * @return the drift of the frame <code>profile</code> was computed from:
+	 *         a well at position x in the reference is at position x+drift in
+	 *         this frame.
+	 */
+	public int estimateDrift( final double[] profile ) {
+		int bestDrift = 0;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for ( int i = 0; i <= 2 * maxDrift; i++ ) {
+			final int drift = ( i % 2 == 0 ) ? i / 2 : -( i + 1 ) / 2; // 0, -1, 1, -2, 2, ...
+			final int x1 = Math.max( 0, -drift );
+			final int x2 = Math.min( width, width - drift );
+			if ( x1 >= x2 ) continue;
+
+			double score = 0;
+			for ( int x = x1; x < x2; x++ ) {
+				score += referenceProfile[ x ] * profile[ x + drift ];
+			}
+			score /= ( x2 - x1 );
+			if ( score > bestScore ) {
+				bestScore = score;
+				bestDrift = drift;
+			}
+		}
+		return bestDrift;
+	}
+
+	/**
+	 * @param drift
+	 *            the drift of the frame (see <code>estimateDrift</code>).
+	 * @param frameIdx
+	 *            the index of the frame in the stack (used as z-coordinate of
+	 *            all points).
+	 * @return one <code>GrowthLineFrame</code> per well, from left to right,
+	 *         containing the shifted center line of that well.
+	 */
+	public List< GrowthLineFrame > createGrowthLineFrames( final int drift, final long frameIdx ) {
+		final List< GrowthLineFrame > ret = new ArrayList< GrowthLineFrame >( centerLinesX.length );
+		for ( int w = 0; w < centerLinesX.length; w++ ) {
+			final GrowthLineFrame glf = new GrowthLineFrame();
+			for ( int i = 0; i < centerLinesX[ w ].length; i++ ) {
+				final int x = Math.max( 0, Math.min( width - 1, centerLinesX[ w ][ i ] + drift ) );
+				glf.addPoint( x, centerLinesY[ w ][ i ], frameIdx );
+			}
+			ret.add( glf );
+		}
+		return ret;
+	}
+}
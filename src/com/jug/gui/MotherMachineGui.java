@@ -3,6 +3,8 @@
  */
 package com.jug.gui;
 
+import gurobi.GRBException;
+
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
@@ -11,13 +13,9 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Vector;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.AbstractAction;
 import javax.swing.BorderFactory;
@@ -33,7 +31,6 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 import loci.formats.gui.ExtensionFileFilter;
-import net.imglib2.Localizable;
 import net.imglib2.algorithm.componenttree.ComponentTree;
 import net.imglib2.algorithm.componenttree.ComponentTreeNode;
 import net.imglib2.type.numeric.real.DoubleType;
@@ -42,7 +39,6 @@ import net.imglib2.view.Views;
 
 import org.math.plot.Plot2DPanel;
 
-import com.jug.GrowthLine;
 import com.jug.GrowthLineFrame;
 import com.jug.MotherMachine;
 import com.jug.lp.GrowthLineTrackingILP;
@@ -374,8 +370,8 @@ public class MotherMachineGui extends JPanel implements ChangeListener, ActionLi
 		// --------------
 		plot.removeAllPlots();
 
-		final double[] yMidline = model.getCurrentGLF().getMirroredCenterLineValues( model.mm.getImgTemp() );
-		final double[] ySegmentationData = model.getCurrentGLF().getGapSeparationValues( model.mm.getImgTemp() );
+		final double[] yMidline = model.getCurrentGLF().getMirroredCenterLineValues( model.getCurrentGL().getStripView() );
+		final double[] ySegmentationData = model.getCurrentGLF().getGapSeparationValues( model.getCurrentGL().getStripView() );
 		final double[] yAvg = new double[ yMidline.length ];
 		final double constY = SimpleFunctionAnalysis.getSum( ySegmentationData ) / ySegmentationData.length;
 		for ( int i = 0; i < yAvg.length; i++ )
@@ -389,8 +385,8 @@ public class MotherMachineGui extends JPanel implements ChangeListener, ActionLi
 
 		// ComponentTreeNodes
 		// ------------------
-		if ( ilp != null ) {
-			final ComponentTree< DoubleType, ? > ct = model.getCurrentGLF().getComponentTree();
+		final ComponentTree< DoubleType, ? > ct = model.getCurrentGLF().getComponentTree();
+		if ( ilp != null && ct != null ) {
 
 			final int numCTNs = ComponentTreeUtils.countNodes( ct );
 			final double[][] xydxdyCTNBorders = new double[ numCTNs ][ 4 ];
@@ -435,14 +431,8 @@ public class MotherMachineGui extends JPanel implements ChangeListener, ActionLi
 	 * @param level
 	 */
 	private void addBoxAtIndex( final int index, final ComponentTreeNode< DoubleType, ? > ctn, final double[][] boxDataArray, final double[] ydata, final int level ) {
-		int min = Integer.MAX_VALUE;
-		int max = Integer.MIN_VALUE;
-		final Iterator< Localizable > componentIterator = ctn.iterator();
-		while ( componentIterator.hasNext() ) {
-			final int pos = componentIterator.next().getIntPosition( 0 );
-			min = Math.min( min, pos );
-			max = Math.max( max, pos );
-		}
+		final int min = ComponentTreeUtils.getTreeNodeMin( ctn );
+		final int max = ComponentTreeUtils.getTreeNodeMax( ctn );
 		final int maxLocation = SimpleFunctionAnalysis.getMax( ydata, min, max ).a.intValue();
 		final int leftLocation = min;
 		final int rightLocation = max;
@@ -615,14 +605,16 @@ public class MotherMachineGui extends JPanel implements ChangeListener, ActionLi
 
 				@Override
 				public void run() {
-					int i = 0;
-					final int glCount = model.mm.getGrowthLines().size();
-					for ( final GrowthLine gl : model.mm.getGrowthLines() ) {
-						i++;
-						System.out.println( String.format( "Generating ILP #%d of %d...", i, glCount ) );
-						gl.generateILP();
-						System.out.println( String.format( "Running ILP #%d of %d...", i, glCount ) );
-						gl.runILP();
+					try {
+						model.mm.getIlpScheduler().buildAndRun( model.mm.getGrowthLines(), false );
+					}
+					catch ( final GRBException e1 ) {
+						e1.printStackTrace();
+						return;
+					}
+					catch ( final ExecutionException e1 ) {
+						// the ILPs of all other GLs were optimized, show them anyways
+						System.out.println( "Not all GLs could be optimized!" );
 					}
 					System.out.println( "...done!" );
 					dataToDisplayChanged();
@@ -646,55 +638,24 @@ public class MotherMachineGui extends JPanel implements ChangeListener, ActionLi
 						}
 						MotherMachine.DEFAULT_PATH = file.getParent();
 
-						final Vector< Vector< String >> dataToExport = new Vector< Vector< String >>();
-
-						int i = 0;
-						final int glCount = model.mm.getGrowthLines().size();
-						for ( final GrowthLine gl : model.mm.getGrowthLines() ) {
-							i++;
-							if ( gl.getIlp() == null ) {
-								System.out.println( String.format( "\nGenerating ILP #%d of %d...", i, glCount ) );
-								gl.generateILP();
-								System.out.println( String.format( "Running ILP #%d of %d...", i, glCount ) );
-								gl.runILP();
-							}
-
-							dataToExport.add( gl.getDataVector() );
+						try {
+							model.mm.getIlpScheduler().buildAndRun( model.mm.getGrowthLines(), true );
+						}
+						catch ( final GRBException e1 ) {
+							JOptionPane.showMessageDialog( self, "Gurobi could not be initialized!", "Error!", JOptionPane.ERROR_MESSAGE );
+							e1.printStackTrace();
+							return;
+						}
+						catch ( final ExecutionException e1 ) {
+							JOptionPane.showMessageDialog( self, "Not all GLs could be optimized -- nothing exported!", "Error!", JOptionPane.ERROR_MESSAGE );
+							dataToDisplayChanged();
+							return;
 						}
 
 						System.out.println( "Exporting data..." );
-						Writer out = null;
 						try {
-							out = new OutputStreamWriter( new FileOutputStream( file ) );
-
-							// writing header line
-							int rowNum = 0;
-							out.write( ", " );
-							for ( int colNum = 0; colNum < dataToExport.get( 0 ).size(); colNum++ ) {
-								out.write( String.format( "t=%d, ", rowNum ) );
-								rowNum++;
-							}
-							out.write( "\n" );
-							// writing GL-data-rows
-							int totalCellCount = 0;
-							for ( final Vector< String > rowInData : dataToExport ) {
-								rowNum++;
-								out.write( String.format( "GL%d, ", rowNum ) );
-								int lastValue = 0;
-								for ( final String datum : rowInData ) {
-									out.write( datum + ", " );
-									try {
-										lastValue = Integer.parseInt( datum );
-									}
-									catch ( final NumberFormatException nfe ) {
-										lastValue = 0;
-									}
-								}
-								totalCellCount += lastValue;
-								out.write( "\n" );
-							}
-							out.write( "\nTotal cell count:, " + totalCellCount );
-							out.close();
+							model.mm.exportCellCounts( file );
+							model.mm.exportMetrics( MotherMachine.getMetricsBaseName( file ) );
 						}
 						catch ( final FileNotFoundException e1 ) {
 							JOptionPane.showMessageDialog( self, "File not found!", "Error!", JOptionPane.ERROR_MESSAGE );
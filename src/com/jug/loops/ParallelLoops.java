@@ -0,0 +1,104 @@
+/**
+ *
+ */
+package com.jug.loops;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jug.util.PipelineMetrics;
+
+/**
+ * Runs independent iterations of a loop (e.g. one per frame) concurrently on
+ * a bounded pool of threads.
+ *
+ * @author jug
+ */
+public class ParallelLoops {
+
+	/**
+	 * The body of a loop, called once per index.
+	 */
+	public interface Body {
+
+		public void run( int i ) throws Exception;
+	}
+
+	/**
+	 * Calls <code>body.run(i)</code> for all <code>0 &lt;= i &lt; n</code>
+	 * using up to <code>numThreads</code> threads and blocks until all
+	 * iterations are done. Iterations must not depend on each other.
+	 * Bytes allocated by the worker threads are attributed to the calling
+	 * thread (see <code>PipelineMetrics.addWorkerAllocatedBytes</code>).
+	 *
+	 * @param n
+	 *            the number of iterations.
+	 * @param numThreads
+	 *            the maximal number of threads to be used (if 1, all
+	 *            iterations run in the calling thread).
+	 * @param body
+	 *            the loop body.
+	 * @throws Exception
+	 *             the first exception thrown by any iteration (all other
+	 *             iterations still run to completion).
+	 */
+	public static void forEach( final int n, final int numThreads, final Body body ) throws Exception {
+		final int numWorkers = Math.min( numThreads, n );
+		if ( numWorkers <= 1 ) {
+			for ( int i = 0; i < n; i++ ) {
+				body.run( i );
+			}
+			return;
+		}
+
+		final ExecutorService pool = Executors.newFixedThreadPool( numWorkers );
+		final AtomicLong workerAllocatedBytes = new AtomicLong( 0 );
+		try {
+			final List< Future< Void > > futures = new ArrayList< Future< Void > >( n );
+			for ( int i = 0; i < n; i++ ) {
+				final int idx = i;
+				futures.add( pool.submit( new Callable< Void >() {
+
+					@Override
+					public Void call() throws Exception {
+						final long allocatedBefore = PipelineMetrics.getAllocatedBytes();
+						try {
+							body.run( idx );
+						}
+						finally {
+							final long allocatedAfter = PipelineMetrics.getAllocatedBytes();
+							if ( allocatedBefore >= 0 && allocatedAfter >= 0 ) {
+								workerAllocatedBytes.addAndGet( allocatedAfter - allocatedBefore );
+							}
+						}
+						return null;
+					}
+				} ) );
+			}
+
+			Exception firstException = null;
+			for ( final Future< Void > future : futures ) {
+				try {
+					future.get();
+				}
+				catch ( final ExecutionException e ) {
+					if ( e.getCause() instanceof Error ) { throw ( Error ) e.getCause(); }
+					if ( firstException == null ) {
+						firstException = ( Exception ) e.getCause();
+					}
+				}
+			}
+			if ( firstException != null ) { throw firstException; }
+		}
+		finally {
+			pool.shutdown();
+			PipelineMetrics.addWorkerAllocatedBytes( workerAllocatedBytes.get() );
+		}
+	}
+}
@@ -11,6 +11,7 @@ import gurobi.GRBVar;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.imglib2.algorithm.componenttree.ComponentTreeNode;
 import net.imglib2.type.numeric.real.DoubleType;
@@ -26,7 +27,7 @@ public class ExitAssignment extends AbstractAssignment< Hypothesis< ComponentTre
 	private final HypothesisNeighborhoods< Hypothesis< ComponentTreeNode< DoubleType, ? > >, AbstractAssignment< Hypothesis< ComponentTreeNode< DoubleType, ? > > > > edges;
 	private final Hypothesis< ComponentTreeNode< DoubleType, ? >> who;
 
-	private static int dcId = 0;
+	private static final AtomicInteger dcId = new AtomicInteger( 0 );
 
 	/**
 	 * Creates an ExitAssignment.
@@ -72,8 +73,7 @@ public class ExitAssignment extends AbstractAssignment< Hypothesis< ComponentTre
 			}
 		}
 
-		model.addConstr( expr, GRB.LESS_EQUAL, Hup.size(), "dc_" + dcId );
-		dcId++;
+		model.addConstr( expr, GRB.LESS_EQUAL, Hup.size(), "dc_" + dcId.getAndIncrement() );
 	}
 
 	/**
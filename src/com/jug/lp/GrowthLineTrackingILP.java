@@ -18,7 +18,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import net.imglib2.Pair;
 import net.imglib2.algorithm.componenttree.ComponentTree;
 import net.imglib2.algorithm.componenttree.ComponentTreeNode;
 import net.imglib2.type.numeric.real.DoubleType;
@@ -78,14 +77,47 @@ public class GrowthLineTrackingILP {
 					AbstractAssignment< Hypothesis< ComponentTreeNode< DoubleType, ? > > > >();
 
 	private int pbcId = 0;
+	private int eccId = 0;
 
 
 	// -------------------------------------------------------------------------------------
 	// construction
 	// -------------------------------------------------------------------------------------
 	public GrowthLineTrackingILP(final GrowthLine gl) {
+		this( gl, getDefaultEnv() );
+	}
+
+	/**
+	 * Creates and builds the ILP for the given <code>GrowthLine</code> using
+	 * the given gurobi environment.
+	 * Since gurobi environments are not thread safe, ILPs that are built
+	 * concurrently need to use distinct environments.
+	 *
+	 * @param gl
+	 * @param env
+	 * @throws IllegalStateException
+	 *             if the gurobi model could not be created in the given
+	 *             environment (carrying the <code>GRBException</code> as
+	 *             cause).
+	 */
+	public GrowthLineTrackingILP( final GrowthLine gl, final GRBEnv env ) {
 		this.gl = gl;
 
+		try {
+			model = new GRBModel( env );
+		}
+		catch ( final GRBException e ) {
+			throw new IllegalStateException( "GrowthLineTrackingILP::model could not be initialized!", e );
+		}
+
+		buildILP();
+	}
+
+	/**
+	 * @return the gurobi environment shared by all ILPs that are not built
+	 *         with an explicitly given environment.
+	 */
+	private static synchronized GRBEnv getDefaultEnv() {
 		// Setting static stuff (this IS ugly!)
 		if ( env == null ) {
 			try {
@@ -96,16 +128,7 @@ public class GrowthLineTrackingILP {
 				e.printStackTrace();
 			}
 		}
-
-		try {
-			model = new GRBModel( env );
-		}
-		catch ( final GRBException e ) {
-			System.out.println( "GrowthLineTrackingILP::model could not be initialized!" );
-			e.printStackTrace();
-		}
-
-		buildILP();
+		return env;
 	}
 
 	// -------------------------------------------------------------------------------------
@@ -255,9 +278,11 @@ public class GrowthLineTrackingILP {
 			fgFile.addFactorComment( "--- FAC-SECTION :: Path-Blocking Constraints ------------" );
 
 			final ComponentTree< DoubleType, ? > ct = gl.get( t ).getComponentTree();
-			for ( final ComponentTreeNode< DoubleType, ? > ctRoot : ct.roots() ) {
-				// And call the function adding all the path-blocking-constraints...
-				recursivelyAddPathBlockingConstraints( ctRoot, t, fgFile );
+			if ( ct != null ) {
+				for ( final ComponentTreeNode< DoubleType, ? > ctRoot : ct.roots() ) {
+					// And call the function adding all the path-blocking-constraints...
+					recursivelyAddPathBlockingConstraints( ctRoot, t, fgFile );
+				}
 			}
 
 			if ( t > 0 && t < nodes.getNumberOfTimeSteps() ) {
@@ -304,6 +329,8 @@ public class GrowthLineTrackingILP {
 	private void createSegmentationHypotheses() {
 		for ( int t = 0; t < gl.size(); t++ ) {
 			final GrowthLineFrame glf = gl.getFrames().get( t );
+			// GLFs of frames the growth line was not found in have no component tree
+			if ( glf.getComponentTree() == null ) continue;
 
 			for ( final ComponentTreeNode< DoubleType, ? > ctRoot : glf.getComponentTree().roots() ) {
 				recursivelyAddCTNsAsHypotheses( t, ctRoot );
@@ -454,14 +481,11 @@ public class GrowthLineTrackingILP {
 		final long sizeFrom = from.getWrappedHypothesis().getSize();
 		final long sizeTo = to.getWrappedHypothesis().getSize();
 
-		final double valueFrom = from.getWrappedHypothesis().getValue().get();
-		final double valueTo = to.getWrappedHypothesis().getValue().get();
-
-		final Pair< Integer, Integer > intervalFrom = ComponentTreeUtils.getTreeNodeInterval( from.getWrappedHypothesis() );
-		final Pair< Integer, Integer > intervalTo = ComponentTreeUtils.getTreeNodeInterval( to.getWrappedHypothesis() );
+		final double valueFrom = ComponentTreeUtils.getTreeNodeValue( from.getWrappedHypothesis() );
+		final double valueTo = ComponentTreeUtils.getTreeNodeValue( to.getWrappedHypothesis() );
 
-		final double oldPos = 0.5 * ( intervalFrom.getB().intValue() + intervalFrom.getA().intValue() );
-		final double newPos = 0.5 * ( intervalTo.getB().intValue() + intervalTo.getA().intValue() );
+		final double oldPos = ComponentTreeUtils.getTreeNodeCenter( from.getWrappedHypothesis() );
+		final double newPos = ComponentTreeUtils.getTreeNodeCenter( to.getWrappedHypothesis() );
 
 		final double glLength = gl.get( 0 ).size();
 
@@ -549,15 +573,11 @@ public class GrowthLineTrackingILP {
 		final long sizeToL = toLower.getWrappedHypothesis().getSize();
 		final long sizeTo = sizeToU + sizeToL;
 
-		final double valueFrom = from.getWrappedHypothesis().getValue().get();
-		final double valueTo = 0.5 * ( toUpper.getWrappedHypothesis().getValue().get() + toLower.getWrappedHypothesis().getValue().get() );
+		final double valueFrom = ComponentTreeUtils.getTreeNodeValue( from.getWrappedHypothesis() );
+		final double valueTo = 0.5 * ( ComponentTreeUtils.getTreeNodeValue( toUpper.getWrappedHypothesis() ) + ComponentTreeUtils.getTreeNodeValue( toLower.getWrappedHypothesis() ) );
 
-		final Pair< Integer, Integer > intervalFrom = ComponentTreeUtils.getTreeNodeInterval( from.getWrappedHypothesis() );
-		final Pair< Integer, Integer > intervalToU = ComponentTreeUtils.getTreeNodeInterval( toUpper.getWrappedHypothesis() );
-		final Pair< Integer, Integer > intervalToL = ComponentTreeUtils.getTreeNodeInterval( toLower.getWrappedHypothesis() );
-
-		final double oldPos = 0.5 * ( intervalFrom.getB().intValue() + intervalFrom.getA().intValue() );
-		final double newPos = 0.5 * ( intervalToL.getB().intValue() + intervalToU.getA().intValue() );
+		final double oldPos = ComponentTreeUtils.getTreeNodeCenter( from.getWrappedHypothesis() );
+		final double newPos = 0.5 * ( ComponentTreeUtils.getTreeNodeMax( toLower.getWrappedHypothesis() ) + ComponentTreeUtils.getTreeNodeMin( toUpper.getWrappedHypothesis() ) );
 
 		final double glLength = gl.get( 0 ).size();
 
@@ -589,12 +609,24 @@ public class GrowthLineTrackingILP {
 	public void addPathBlockingConstraint() throws GRBException {
 		// For each time-point
 		for ( int t = 0; t < gl.size(); t++ ) {
-			// Get the full component tree
-			final ComponentTree< DoubleType, ? > ct = gl.get( t ).getComponentTree();
-			for ( final ComponentTreeNode< DoubleType, ? > ctRoot : ct.roots() ) {
-				// And call the function adding all the path-blocking-constraints...
-				recursivelyAddPathBlockingConstraints( ctRoot, t );
-			}
+			addPathBlockingConstraints( t );
+		}
+	}
+
+	/**
+	 * Adds the path-blocking constraints of all paths in the component tree
+	 * at time-point t.
+	 *
+	 * @param t
+	 * @throws GRBException
+	 */
+	private void addPathBlockingConstraints( final int t ) throws GRBException {
+		// Get the full component tree
+		final ComponentTree< DoubleType, ? > ct = gl.get( t ).getComponentTree();
+		if ( ct == null ) return;
+		for ( final ComponentTreeNode< DoubleType, ? > ctRoot : ct.roots() ) {
+			// And call the function adding all the path-blocking-constraints...
+			recursivelyAddPathBlockingConstraints( ctRoot, t );
 		}
 	}
 
@@ -700,29 +732,104 @@ public class GrowthLineTrackingILP {
 	 * finding an active assignment towards t+1.
 	 */
 	public void addExplainationContinuityConstraints() throws GRBException {
-		int eccId = 0;
-
 		// For each time-point
 		for ( int t = 1; t < gl.size() - 1; t++ ) { // !!! sparing out the border !!!
+			addExplainationContinuityConstraints( t );
+		}
+	}
 
-			for ( final Hypothesis< ComponentTreeNode< DoubleType, ? >> hyp : nodes.getHypothesesAt( t ) ) {
-				final GRBLinExpr expr = new GRBLinExpr();
+	/**
+	 * Adds the explanation-continuity-constraints of all segmentation
+	 * hypotheses at time-point t.
+	 *
+	 * @param t
+	 * @throws GRBException
+	 */
+	private void addExplainationContinuityConstraints( final int t ) throws GRBException {
+		for ( final Hypothesis< ComponentTreeNode< DoubleType, ? >> hyp : nodes.getHypothesesAt( t ) ) {
+			final GRBLinExpr expr = new GRBLinExpr();
 
-				if ( edgeSets.getLeftNeighborhood( hyp ) != null ) {
-					for ( final AbstractAssignment< Hypothesis< ComponentTreeNode< DoubleType, ? >>> a_j : edgeSets.getLeftNeighborhood( hyp ) ) {
-						expr.addTerm( 1.0, a_j.getGRBVar() );
-					}
+			if ( edgeSets.getLeftNeighborhood( hyp ) != null ) {
+				for ( final AbstractAssignment< Hypothesis< ComponentTreeNode< DoubleType, ? >>> a_j : edgeSets.getLeftNeighborhood( hyp ) ) {
+					expr.addTerm( 1.0, a_j.getGRBVar() );
 				}
-				if ( edgeSets.getRightNeighborhood( hyp ) != null ) {
-					for ( final AbstractAssignment< Hypothesis< ComponentTreeNode< DoubleType, ? >>> a_j : edgeSets.getRightNeighborhood( hyp ) ) {
-						expr.addTerm( -1.0, a_j.getGRBVar() );
-					}
+			}
+			if ( edgeSets.getRightNeighborhood( hyp ) != null ) {
+				for ( final AbstractAssignment< Hypothesis< ComponentTreeNode< DoubleType, ? >>> a_j : edgeSets.getRightNeighborhood( hyp ) ) {
+					expr.addTerm( -1.0, a_j.getGRBVar() );
+				}
+			}
+
+			// add the constraint for this hypothesis
+			model.addConstr( expr, GRB.EQUAL, 0.0, "ecc_" + eccId );
+			eccId++;
+		}
+	}
+
+	/**
+	 * Extends this (already built) ILP by the last frame of
+	 * <code>gl</code>, which must have been appended (including its component
+	 * tree) after this ILP was built or last extended.
+	 * Only the hypotheses of the new time-point, the assignments between the
+	 * previous and the new time-point, and the constraints depending on those
+	 * are added. If a solution of the previous model exists, it is set as MIP
+	 * start (warm start) for the next call to <code>run()</code>.
+	 */
+	public void addLastTimeStep() {
+		final int t = gl.size() - 1;
+		if ( t < 1 || nodes.getNumberOfTimeSteps() != t ) {
+			System.out.println( "GrowthLineTrackingILP: cannot add time-point " + t + " to an ILP containing " + nodes.getNumberOfTimeSteps() + " time-points!" );
+			return;
+		}
+
+		try {
+			// remember the current solution (if any) to warm start from it
+			GRBVar[] previousVars = null;
+			double[] previousSolution = null;
+			if ( model.get( GRB.IntAttr.SolCount ) > 0 ) {
+				previousVars = model.getVars();
+				previousSolution = model.get( GRB.DoubleAttr.X, previousVars );
+			}
+
+			// add Hypothesis of the new time-point
+			nodes.addTimeStep();
+			final GrowthLineFrame glf = gl.getFrames().get( t );
+			if ( glf.getComponentTree() != null ) {
+				for ( final ComponentTreeNode< DoubleType, ? > ctRoot : glf.getComponentTree().roots() ) {
+					recursivelyAddCTNsAsHypotheses( t, ctRoot );
 				}
+			}
+
+			// add Assignments from the previous to the new time-point
+			final List< Hypothesis< ComponentTreeNode< DoubleType, ? >>> curHyps = nodes.getHypothesesAt( t - 1 );
+			final List< Hypothesis< ComponentTreeNode< DoubleType, ? >>> nxtHyps = nodes.getHypothesesAt( t );
+			addExitAssignments( t - 1, curHyps );
+			addMappingAssignments( t - 1, curHyps, nxtHyps );
+			addDivisionAssignments( t - 1, curHyps, nxtHyps );
+
+			model.update();
 
-				// add the constraint for this hypothesis
-				model.addConstr( expr, GRB.EQUAL, 0.0, "ecc_" + eccId );
-				eccId++;
+			for ( final AbstractAssignment< Hypothesis< ComponentTreeNode< DoubleType, ? >>> assignment : nodes.getAssignmentsAt( t - 1 ) ) {
+				assignment.addConstraintsToLP();
 			}
+
+			// The former last time-point did not have any right assignments,
+			// hence its path-blocking constraints were empty and it was spared
+			// out of the explanation-continuity constraints.
+			addPathBlockingConstraints( t - 1 );
+			if ( t - 1 >= 1 ) {
+				addExplainationContinuityConstraints( t - 1 );
+			}
+
+			model.update();
+
+			if ( previousSolution != null ) {
+				model.set( GRB.DoubleAttr.Start, previousVars, previousSolution );
+			}
+		}
+		catch ( final GRBException e ) {
+			System.out.println( "Could not add time-point " + t + " to GrowthLineTrackingILP!" );
+			e.printStackTrace();
 		}
 	}
 
@@ -807,8 +914,7 @@ public class GrowthLineTrackingILP {
 	public Hypothesis< ComponentTreeNode< DoubleType, ? >> getOptimalSegmentationAtLocation( final int t, final int gapSepYPos ) {
 		final List< Hypothesis< ComponentTreeNode< DoubleType, ? >>> hyps = getOptimalHypotheses( t );
 		for ( final Hypothesis< ComponentTreeNode< DoubleType, ? >> h : hyps ) {
-			final Pair< Integer, Integer > ctnLimits = ComponentTreeUtils.getTreeNodeInterval( h.getWrappedHypothesis() );
-			if ( ctnLimits.getA().intValue() <= gapSepYPos && ctnLimits.getB().intValue() >= gapSepYPos ) { return h; }
+			if ( ComponentTreeUtils.getTreeNodeMin( h.getWrappedHypothesis() ) <= gapSepYPos && ComponentTreeUtils.getTreeNodeMax( h.getWrappedHypothesis() ) >= gapSepYPos ) { return h; }
 		}
 		return null;
 	}
@@ -0,0 +1,272 @@
+/**
+ *
+ */
+package com.jug.lp;
+
+import gurobi.GRB;
+import gurobi.GRBEnv;
+import gurobi.GRBException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jug.GrowthLine;
+import com.jug.util.PipelineMetrics;
+
+/**
+ * Builds and solves the <code>GrowthLineTrackingILP</code>s of many
+ * <code>GrowthLine</code>s concurrently.
+ * All ILPs are independent of each other, hence each one is built and solved
+ * as one task on a bounded pool of worker threads. Each running task owns
+ * one of the <code>GRBEnv</code>s of the scheduler (gurobi environments must
+ * not be shared between threads) and each model is limited to its share of
+ * the given total gurobi thread budget.
+ * Environments are created once per scheduler and reused by later calls of
+ * <code>buildAndRun</code>. They (and all models built in them) are released
+ * by <code>dispose</code>.
+ *
+ * @author jug
+ */
+public class GrowthLineTrackingILPScheduler {
+
+	// -------------------------------------------------------------------------------------
+	// fields
+	// -------------------------------------------------------------------------------------
+	private final int threadBudget;
+	private final PipelineMetrics metrics;
+	private final File logFolder;
+
+	/**
+	 * The gurobi environments of this scheduler (at most one per worker).
+	 */
+	private final List< GRBEnv > envs = new ArrayList< GRBEnv >();
+
+	/**
+	 * All ILPs built by this scheduler (their models live in
+	 * <code>envs</code>).
+	 */
+	private final List< GrowthLineTrackingILP > ilps = new ArrayList< GrowthLineTrackingILP >();
+
+	// -------------------------------------------------------------------------------------
+	// construction
+	// -------------------------------------------------------------------------------------
+	/**
+	 * @param threadBudget
+	 *            the total number of threads all concurrently running gurobi
+	 *            optimizations together are allowed to use. This number also
+	 *            bounds the number of ILPs built and solved at the same time.
+	 */
+	public GrowthLineTrackingILPScheduler( final int threadBudget ) {
+		this( threadBudget, null, null );
+	}
+
+	/**
+	 * @param threadBudget
+	 *            the total number of threads all concurrently running gurobi
+	 *            optimizations together are allowed to use. This number also
+	 *            bounds the number of ILPs built and solved at the same time.
+	 * @param metrics
+	 *            if not <code>null</code>, build and solve of each ILP are
+	 *            recorded here (scope "GL#&lt;id&gt;").
+	 * @param logFolder
+	 *            the folder the gurobi log files
+	 *            ('MotherMachineILPs_&lt;n&gt;.log', one per environment) are
+	 *            written to. If <code>null</code>, the working directory is
+	 *            used.
+	 */
+	public GrowthLineTrackingILPScheduler( final int threadBudget, final PipelineMetrics metrics, final File logFolder ) {
+		this.threadBudget = Math.max( 1, threadBudget );
+		this.metrics = metrics;
+		this.logFolder = logFolder;
+	}
+
+	// -------------------------------------------------------------------------------------
+	// methods
+	// -------------------------------------------------------------------------------------
+	/**
+	 * Builds and runs the ILPs of the given growth lines and blocks until all
+	 * of them are done.
+	 *
+	 * @param gls
+	 *            the growth lines to be optimized.
+	 * @param onlyRemaining
+	 *            if <code>true</code>, growth lines that do already have an
+	 *            ILP are left untouched (keeping possibly user-defined
+	 *            ground-truth bits), otherwise all ILPs are built from scratch.
+	 * @throws GRBException
+	 *             if a gurobi environment could not be created (no ILP is
+	 *             built in that case).
+	 * @throws ExecutionException
+	 *             the failure of the first growth line whose ILP could not
+	 *             be built or solved (thrown once all other ILPs are done).
+	 */
+	public synchronized void buildAndRun( final List< GrowthLine > gls, final boolean onlyRemaining ) throws GRBException, ExecutionException {
+		final List< GrowthLine > todo = new ArrayList< GrowthLine >();
+		final List< Integer > glIds = new ArrayList< Integer >();
+		for ( int i = 0; i < gls.size(); i++ ) {
+			if ( !onlyRemaining || gls.get( i ).getIlp() == null ) {
+				todo.add( gls.get( i ) );
+				glIds.add( new Integer( i + 1 ) );
+			}
+		}
+		if ( todo.size() == 0 ) { return; }
+
+		final int numWorkers = Math.min( threadBudget, todo.size() );
+		final int threadsPerIlp = Math.max( 1, threadBudget / numWorkers );
+		System.out.println( String.format( "Optimizing %d GLs using %d workers with %d gurobi thread(s) each...", todo.size(), numWorkers, threadsPerIlp ) );
+
+		// one environment per worker, each one used by at most one task at a time
+		while ( envs.size() < numWorkers ) {
+			envs.add( createEnv( new File( logFolder, "MotherMachineILPs_" + envs.size() + ".log" ).getPath() ) );
+		}
+		final BlockingQueue< GRBEnv > idleEnvs = new ArrayBlockingQueue< GRBEnv >( numWorkers );
+		idleEnvs.addAll( envs.subList( 0, numWorkers ) );
+
+		final AtomicInteger numDone = new AtomicInteger( 0 );
+		final AtomicLong workerAllocatedBytes = new AtomicLong( 0 );
+		final ExecutorService pool = Executors.newFixedThreadPool( numWorkers );
+		final List< Future< ? > > futures = new ArrayList< Future< ? > >();
+		for ( int i = 0; i < todo.size(); i++ ) {
+			final GrowthLine gl = todo.get( i );
+			final int glId = glIds.get( i ).intValue();
+			futures.add( pool.submit( new Callable< Void >() {
+
+				@Override
+				public Void call() throws InterruptedException {
+					final GRBEnv env = idleEnvs.take();
+					final long allocatedBefore = PipelineMetrics.getAllocatedBytes();
+					try {
+						buildAndRun( gl, glId, env, threadsPerIlp );
+					}
+					finally {
+						idleEnvs.add( env );
+						final long allocatedAfter = PipelineMetrics.getAllocatedBytes();
+						if ( allocatedBefore >= 0 && allocatedAfter >= 0 ) {
+							workerAllocatedBytes.addAndGet( allocatedAfter - allocatedBefore );
+						}
+					}
+					System.out.println( String.format( "   GL#%d: done! (%d of %d GLs optimized)", glId, numDone.incrementAndGet(), todo.size() ) );
+					return null;
+				}
+			} ) );
+		}
+		pool.shutdown();
+
+		ExecutionException firstFailure = null;
+		int numFailed = 0;
+		for ( int i = 0; i < futures.size(); i++ ) {
+			try {
+				futures.get( i ).get();
+			}
+			catch ( final InterruptedException e ) {
+				e.printStackTrace();
+			}
+			catch ( final ExecutionException e ) {
+				if ( e.getCause() instanceof Error ) { throw ( Error ) e.getCause(); }
+				System.out.println( "   GL#" + glIds.get( i ) + ": ILP could not be built or solved!" );
+				e.printStackTrace();
+				if ( firstFailure == null ) {
+					firstFailure = e;
+				}
+				numFailed++;
+			}
+		}
+		PipelineMetrics.addWorkerAllocatedBytes( workerAllocatedBytes.get() );
+		if ( firstFailure != null ) {
+			System.out.println( String.format( "Optimization failed for %d of %d GLs!", numFailed, todo.size() ) );
+			throw firstFailure;
+		}
+	}
+
+	/**
+	 * Builds and runs the ILP of one growth line in the given environment.
+	 * The model of a previous ILP of the growth line is disposed.
+	 */
+	private void buildAndRun( final GrowthLine gl, final int glId, final GRBEnv env, final int threadsPerIlp ) {
+		// the model of the ILP that is replaced would otherwise stay alive until dispose()
+		final GrowthLineTrackingILP oldIlp = gl.getIlp();
+		if ( oldIlp != null ) {
+			synchronized ( ilps ) {
+				ilps.remove( oldIlp );
+			}
+			if ( oldIlp.model != null ) {
+				oldIlp.model.dispose();
+			}
+		}
+
+		System.out.println( String.format( "   GL#%d: generating ILP...", glId ) );
+		PipelineMetrics.Stage stage = ( metrics == null ) ? null : metrics.start( "GL#" + glId, "ilp build" );
+		gl.generateILP( env );
+		if ( stage != null ) stage.stop();
+		synchronized ( ilps ) {
+			ilps.add( gl.getIlp() );
+		}
+		try {
+			gl.getIlp().model.getEnv().set( GRB.IntParam.Threads, threadsPerIlp );
+		}
+		catch ( final GRBException e ) {
+			System.out.println( "Could not set gurobi thread limit for GL#" + glId + "!" );
+			e.printStackTrace();
+		}
+		System.out.println( String.format( "   GL#%d: running ILP...", glId ) );
+		stage = ( metrics == null ) ? null : metrics.start( "GL#" + glId, "ilp solve" );
+		gl.runILP();
+		if ( stage != null ) stage.stop();
+	}
+
+	/**
+	 * Releases all models built by this scheduler and all its gurobi
+	 * environments. The ILPs built by this scheduler must not be used
+	 * afterwards. Later calls of <code>buildAndRun</code> create new
+	 * environments.
+	 */
+	public synchronized void dispose() {
+		synchronized ( ilps ) {
+			for ( final GrowthLineTrackingILP ilp : ilps ) {
+				if ( ilp.model != null ) {
+					ilp.model.dispose();
+				}
+			}
+			ilps.clear();
+		}
+		for ( final GRBEnv env : envs ) {
+			try {
+				env.dispose();
+			}
+			catch ( final GRBException e ) {
+				System.out.println( "GrowthLineTrackingILPScheduler: gurobi environment could not be disposed!" );
+				e.printStackTrace();
+			}
+		}
+		envs.clear();
+	}
+
+	/**
+	 * Creates a new gurobi environment.
+	 *
+	 * @param logFileName
+	 * @return the new environment.
+	 * @throws GRBException
+	 *             if the environment could not be created (e.g. because no
+	 *             license is available).
+	 */
+	private static GRBEnv createEnv( final String logFileName ) throws GRBException {
+		try {
+			return new GRBEnv( logFileName );
+		}
+		catch ( final GRBException e ) {
+			System.out.println( "GrowthLineTrackingILPScheduler: gurobi environment could not be initialized!" );
+			throw e;
+		}
+	}
+}
@@ -3,7 +3,6 @@
  */
 package com.jug.lp.costs;
 
-import net.imglib2.Pair;
 import net.imglib2.algorithm.componenttree.ComponentTreeNode;
 import net.imglib2.type.numeric.real.DoubleType;
 
@@ -76,9 +75,8 @@ public class CostFactory {
 	 * @return
 	 */
 	public static double getSegmentationCost( final ComponentTreeNode< DoubleType, ? > ctNode, final double[] gapSepFkt ) {
-		final Pair< Integer, Integer > segInterval = ComponentTreeUtils.getTreeNodeInterval( ctNode );
-		final int a = segInterval.getA().intValue();
-		final int b = segInterval.getB().intValue();
+		final int a = ComponentTreeUtils.getTreeNodeMin( ctNode );
+		final int b = ComponentTreeUtils.getTreeNodeMax( ctNode );
 
 		int aReduced = SimpleFunctionAnalysis.getRighthandLocalMax( gapSepFkt, a ).a.intValue();
 		aReduced = SimpleFunctionAnalysis.getRighthandLocalMin( gapSepFkt, aReduced ).a.intValue();
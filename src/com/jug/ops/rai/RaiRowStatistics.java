@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package com.jug.ops.rai;
+
+import java.util.Arrays;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.ops.operation.UnaryOutputOperation;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * Computes mean, variance, min and max of all hyperslices of a
+ * <code>RandomAccessibleInterval</code> along a given dimension (e.g. of all
+ * rows of a 2d slice if d=1) in a single pass (Welford's algorithm), without
+ * any intermediate images.
+ * Variances are population variances (like the ones computed by
+ * <code>VarOfRai</code>).
+ *
+ * @author jug
+ *
+ */
+public class RaiRowStatistics<T extends RealType<T>> implements
+	UnaryOutputOperation< RandomAccessibleInterval<T>, RaiRowStatistics.Result > {
+
+    /**
+     * Statistics of all hyperslices, indexed by the position of the
+     * hyperslice along the sliced dimension (relative to its min).
+     */
+    public static class Result {
+	public final double[] mean;
+	public final double[] var;
+	public final double[] min;
+	public final double[] max;
+
+	public Result(int numRows) {
+	    mean = new double[numRows];
+	    var = new double[numRows];
+	    min = new double[numRows];
+	    max = new double[numRows];
+	}
+    }
+
+    private final int d;
+
+    /**
+     * @param d - dimension along which the hyperslices are taken (as in
+     * <code>Loops.forEachHyperslice</code>).
+     */
+    public RaiRowStatistics(int d) {
+	this.d = d;
+    }
+
+    /**
+     * @see net.imglib2.ops.operation.UnaryOutputOperation#createEmptyOutput(java.lang.Object)
+     */
+    @Override
+    public Result createEmptyOutput(RandomAccessibleInterval<T> in) {
+	return new Result((int) in.dimension(d));
+    }
+
+    /**
+     * @see net.imglib2.ops.operation.UnaryOutputOperation#compute(java.lang.Object)
+     */
+    @Override
+    public Result compute(RandomAccessibleInterval<T> in) {
+	return compute(in, createEmptyOutput(in));
+    }
+
+    /**
+     * @see net.imglib2.ops.operation.UnaryOperation#compute(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public Result compute(RandomAccessibleInterval<T> input, Result output) {
+	final int numRows = (int) input.dimension(d);
+	final long offset = input.min(d);
+	final long[] count = new long[numRows];
+	final double[] m2 = new double[numRows];
+	Arrays.fill(output.mean, 0.0);
+	Arrays.fill(output.min, Double.POSITIVE_INFINITY);
+	Arrays.fill(output.max, Double.NEGATIVE_INFINITY);
+
+	final Cursor<T> cursor = Views.iterable(input).localizingCursor();
+	while (cursor.hasNext()) {
+	    cursor.fwd();
+	    final int row = (int) (cursor.getLongPosition(d) - offset);
+	    final double v = cursor.get().getRealDouble();
+
+	    count[row]++;
+	    final double delta = v - output.mean[row];
+	    output.mean[row] += delta / count[row];
+	    m2[row] += delta * (v - output.mean[row]);
+	    if (v < output.min[row]) output.min[row] = v;
+	    if (v > output.max[row]) output.max[row] = v;
+	}
+
+	for (int row = 0; row < numRows; row++) {
+	    output.var[row] = (count[row] > 0) ? m2[row] / count[row] : 0.0;
+	}
+	return output;
+    }
+
+    /**
+     * @see net.imglib2.ops.operation.UnaryOutputOperation#copy()
+     */
+    @Override
+    public UnaryOutputOperation<RandomAccessibleInterval<T>, Result> copy() {
+	return new RaiRowStatistics<T>(d);
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ *
+ */
+package com.jug.util;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.view.Views;
+
+/**
+ * Removes uneven illumination around growth lines, one frame at a time,
+ * working on primitive arrays.
+ * For each growth line (given by its x-position) the average intensity of
+ * each row within a left and a right template window (at distance
+ * <code>templateXMin</code> to <code>templateXMax</code>) is subtracted from
+ * the row within <code>xOffset</code> of the growth line (clamped at 0),
+ * afterwards this zone is normalized to [0,1].
+ * Window sums are taken from row-wise prefix sums. Growth lines are
+ * processed in the given order and later ones see the changes of earlier
+ * ones, hence prefix sums are extended lazily and recomputed from the
+ * leftmost changed column when needed.
+ *
+ * @author jug
+ */
+public class BackgroundSubtractor {
+
+	// -------------------------------------------------------------------------------------
+	// fields
+	// -------------------------------------------------------------------------------------
+	private final int templateXMin;
+	private final int templateXMax;
+	private final int xOffset;
+
+	// -------------------------------------------------------------------------------------
+	// construction
+	// -------------------------------------------------------------------------------------
+	public BackgroundSubtractor( final int templateXMin, final int templateXMax, final int xOffset ) {
+		this.templateXMin = templateXMin;
+		this.templateXMax = templateXMax;
+		this.xOffset = xOffset;
+	}
+
+	// -------------------------------------------------------------------------------------
+	// methods
+	// -------------------------------------------------------------------------------------
+	/**
+	 * Subtracts the background around the given growth lines in slice
+	 * <code>z</code> of the given stack (in-place). Stacks backed by a single
+	 * double array are modified directly, other stacks via a copy of the
+	 * slice.
+	 *
+	 * @param stack
+	 *            a zero-min 3d stack.
+	 * @param z
+	 *            the slice to work on.
+	 * @param glXs
+	 *            the x-positions of all growth lines in this slice (-1 for
+	 *            growth lines to be skipped), in processing order.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public void subtract( final Img< DoubleType > stack, final long z, final int[] glXs ) {
+		if ( stack instanceof ArrayImg && ( ( ArrayImg< DoubleType, ? > ) stack ).update( null ) instanceof DoubleArray ) {
+			final int width = ( int ) stack.dimension( 0 );
+			final int height = ( int ) stack.dimension( 1 );
+			final double[] data = ( ( ArrayImg< DoubleType, DoubleArray > ) stack ).update( null ).getCurrentStorageArray();
+			subtract( data, ( int ) ( z * width * height ), width, height, glXs );
+		} else {
+			subtract( Views.hyperSlice( stack, 2, z ), glXs );
+		}
+	}
+
+	/**
+	 * Subtracts the background around the given growth lines in the given
+	 * frame (in-place). Frames backed by a single double array are modified
+	 * directly, other frames via a copy.
+	 *
+	 * @param frame
+	 *            a zero-min 2d frame.
+	 * @param glXs
+	 *            the x-positions of all growth lines in this frame (-1 for
+	 *            growth lines to be skipped), in processing order.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public void subtract( final RandomAccessibleInterval< DoubleType > frame, final int[] glXs ) {
+		final int width = ( int ) frame.dimension( 0 );
+		final int height = ( int ) frame.dimension( 1 );
+
+		if ( frame instanceof ArrayImg && ( ( ArrayImg< DoubleType, ? > ) frame ).update( null ) instanceof DoubleArray ) {
+			final double[] data = ( ( ArrayImg< DoubleType, DoubleArray > ) frame ).update( null ).getCurrentStorageArray();
+			subtract( data, 0, width, height, glXs );
+		} else {
+			final double[] data = new double[ width * height ];
+			Cursor< DoubleType > cursor = Views.iterable( frame ).localizingCursor();
+			while ( cursor.hasNext() ) {
+				cursor.fwd();
+				data[ cursor.getIntPosition( 0 ) + cursor.getIntPosition( 1 ) * width ] = cursor.get().get();
+			}
+			subtract( data, 0, width, height, glXs );
+			cursor = Views.iterable( frame ).localizingCursor();
+			while ( cursor.hasNext() ) {
+				cursor.fwd();
+				cursor.get().set( data[ cursor.getIntPosition( 0 ) + cursor.getIntPosition( 1 ) * width ] );
+			}
+		}
+	}
+
+	/**
+	 * Subtracts the background around the given growth lines in a frame
+	 * stored row by row in <code>data</code>, starting at
+	 * <code>offset</code> (in-place).
+	 *
+	 * @param data
+	 * @param offset
+	 *            index of pixel (0,0) of the frame.
+	 * @param width
+	 * @param height
+	 * @param glXs
+	 *            the x-positions of all growth lines in this frame (-1 for
+	 *            growth lines to be skipped), in processing order.
+	 */
+	public void subtract( final double[] data, final int offset, final int width, final int height, final int[] glXs ) {
+		// prefix[ y * (width+1) + x ] = sum of row y left of column x
+		final int stride = width + 1;
+		final double[] prefix = new double[ stride * height ];
+		int validColumns = 0; // prefix sums are valid for all x <= validColumns
+		final double[] rowAvgs = new double[ height ];
+
+		for ( final int glX : glXs ) {
+			if ( glX == -1 ) continue; // do not do anything with empty GLFs
+
+			final boolean useLeft = glX > templateXMax;
+			final boolean useRight = glX < width - templateXMax;
+			final int neededColumns = useRight ? glX + templateXMax + 1 : glX - templateXMin + 1;
+			if ( ( useLeft || useRight ) && neededColumns > validColumns ) {
+				for ( int y = 0; y < height; y++ ) {
+					final int row = offset + y * width;
+					final int p = y * stride;
+					for ( int x = validColumns; x < neededColumns; x++ ) {
+						prefix[ p + x + 1 ] = prefix[ p + x ] + data[ row + x ];
+					}
+				}
+				validColumns = neededColumns;
+			}
+
+			int colCount = 0;
+			for ( int y = 0; y < height; y++ ) {
+				rowAvgs[ y ] = 0;
+			}
+			// Look to the left if you are not the first GLF
+			if ( useLeft ) {
+				addWindowSums( prefix, stride, height, glX - templateXMax, glX - templateXMin, rowAvgs );
+				colCount += ( templateXMax - templateXMin );
+			}
+			// Look to the right if you are not the last GLF
+			if ( useRight ) {
+				addWindowSums( prefix, stride, height, glX + templateXMin, glX + templateXMax, rowAvgs );
+				colCount += ( templateXMax - templateXMin );
+			}
+			for ( int y = 0; y < height; y++ ) {
+				rowAvgs[ y ] /= colCount;
+			}
+
+			// subtract averages and normalize the zone to [0,1]
+			final int x1 = Math.max( 0, glX - xOffset );
+			final int x2 = Math.min( width - 1, glX + xOffset );
+			double min = Double.MAX_VALUE;
+			double max = -Double.MAX_VALUE;
+			for ( int y = 0; y < height; y++ ) {
+				final int row = offset + y * width;
+				for ( int x = x1; x <= x2; x++ ) {
+					final double v = Math.max( 0, data[ row + x ] - rowAvgs[ y ] );
+					data[ row + x ] = v;
+					if ( v < min ) min = v;
+					if ( v > max ) max = v;
+				}
+			}
+			final double range = max - min;
+			for ( int y = 0; y < height; y++ ) {
+				final int row = offset + y * width;
+				for ( int x = x1; x <= x2; x++ ) {
+					data[ row + x ] = ( data[ row + x ] - min ) / range;
+				}
+			}
+
+			// columns from x1 on changed, their prefix sums have to be recomputed
+			validColumns = Math.min( validColumns, x1 );
+		}
+	}
+
+	/**
+	 * Adds the sum of columns <code>xFrom</code> to <code>xTo</code>
+	 * (inclusive) of each row to <code>rowSums</code>.
+	 */
+	private static void addWindowSums( final double[] prefix, final int stride, final int height, final int xFrom, final int xTo, final double[] rowSums ) {
+		for ( int y = 0; y < height; y++ ) {
+			final int p = y * stride;
+			rowSums[ y ] += prefix[ p + xTo + 1 ] - prefix[ p + xFrom ];
+		}
+	}
+}
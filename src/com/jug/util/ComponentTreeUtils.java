@@ -54,9 +54,7 @@ public class ComponentTreeUtils {
 	 * @return
 	 */
 	public static boolean isAbove( final ComponentTreeNode< DoubleType, ? > candidate, final ComponentTreeNode< DoubleType, ? > reference ) {
-		final Pair< Integer, Integer > candMinMax = getTreeNodeInterval( candidate );
-		final Pair< Integer, Integer > refMinMax = getTreeNodeInterval( reference );
-		return candMinMax.getB().intValue() < refMinMax.getA().intValue();
+		return getTreeNodeMax( candidate ) < getTreeNodeMin( reference );
 	}
 
 	/**
@@ -65,9 +63,7 @@ public class ComponentTreeUtils {
 	 * @return
 	 */
 	public static boolean isBelow( final ComponentTreeNode< DoubleType, ? > candidate, final ComponentTreeNode< DoubleType, ? > reference ) {
-		final Pair< Integer, Integer > candMinMax = getTreeNodeInterval( candidate );
-		final Pair< Integer, Integer > refMinMax = getTreeNodeInterval( reference );
-		return candMinMax.getA().intValue() > refMinMax.getB().intValue();
+		return getTreeNodeMin( candidate ) > getTreeNodeMax( reference );
 	}
 
 	/**
@@ -84,6 +80,10 @@ public class ComponentTreeUtils {
 	 *         this component-tree-node respectively.
 	 */
 	public static Pair< Integer, Integer > getTreeNodeInterval( final ComponentTreeNode< DoubleType, ? > node ) {
+		if ( node instanceof IntervalComponentTree.Node ) {
+			final IntervalComponentTree.Node intervalNode = ( IntervalComponentTree.Node ) node;
+			return new ValuePair< Integer, Integer >( new Integer( intervalNode.getMin() ), new Integer( intervalNode.getMax() ) );
+		}
 		int min = Integer.MAX_VALUE;
 		int max = Integer.MIN_VALUE;
 		final Iterator< Localizable > componentIterator = node.iterator();
@@ -95,6 +95,46 @@ public class ComponentTreeUtils {
 		return new ValuePair< Integer, Integer >( new Integer( min ), new Integer( max ) );
 	}
 
+	/**
+	 * @param node
+	 * @return the leftmost point on the x-axis covered by the given node (see
+	 *         <code>getTreeNodeInterval</code>).
+	 */
+	public static int getTreeNodeMin( final ComponentTreeNode< DoubleType, ? > node ) {
+		if ( node instanceof IntervalComponentTree.Node ) { return ( ( IntervalComponentTree.Node ) node ).getMin(); }
+		return getTreeNodeInterval( node ).getA().intValue();
+	}
+
+	/**
+	 * @param node
+	 * @return the rightmost point on the x-axis covered by the given node (see
+	 *         <code>getTreeNodeInterval</code>).
+	 */
+	public static int getTreeNodeMax( final ComponentTreeNode< DoubleType, ? > node ) {
+		if ( node instanceof IntervalComponentTree.Node ) { return ( ( IntervalComponentTree.Node ) node ).getMax(); }
+		return getTreeNodeInterval( node ).getB().intValue();
+	}
+
+	/**
+	 * @param node
+	 * @return the center of the interval on the x-axis covered by the given
+	 *         node (see <code>getTreeNodeInterval</code>).
+	 */
+	public static double getTreeNodeCenter( final ComponentTreeNode< DoubleType, ? > node ) {
+		if ( node instanceof IntervalComponentTree.Node ) { return ( ( IntervalComponentTree.Node ) node ).getCenter(); }
+		final Pair< Integer, Integer > interval = getTreeNodeInterval( node );
+		return 0.5 * ( interval.getB().intValue() + interval.getA().intValue() );
+	}
+
+	/**
+	 * @param node
+	 * @return the value of the given node.
+	 */
+	public static double getTreeNodeValue( final ComponentTreeNode< DoubleType, ? > node ) {
+		if ( node instanceof IntervalComponentTree.Node ) { return ( ( IntervalComponentTree.Node ) node ).getMaxValue(); }
+		return node.getValue().get();
+	}
+
 	// public static double[] getFunctionValues( final ComponentTreeNode<
 	// DoubleType, ? > node ) {
 	// Pair< Integer, Integer > interval = getTreeNodeInterval( node );
@@ -218,6 +258,7 @@ public class ComponentTreeUtils {
 	 * @return
 	 */
 	public static int getLevelInTree( final ComponentTreeNode< DoubleType, ? > ctn ) {
+		if ( ctn instanceof IntervalComponentTree.Node ) { return ( ( IntervalComponentTree.Node ) ctn ).getDepth(); }
 		int level = 0;
 		ComponentTreeNode< DoubleType, ? > runner = ctn;
 		while ( runner.getParent() != null ) {
@@ -4,6 +4,7 @@
 package com.jug.util;
 
 import net.imglib2.Cursor;
+import net.imglib2.FlatIterationOrder;
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
@@ -61,6 +62,57 @@ public class DataMover {
 		copy( source, Views.iterable( target ) );
 	}
 
+	/**
+	 * Creates a new stack that contains all slices of <code>stack</code>
+	 * (slices along the last dimension) followed by the given
+	 * <code>slice</code>.
+	 *
+	 * @param stack
+	 *            - the n-dimensional stack to append to.
+	 * @param slice
+	 *            - an (n-1)-dimensional, zero-min slice of the same size as
+	 *            the slices of <code>stack</code>.
+	 * @return the new, one slice longer stack (created by the factory of
+	 *         <code>stack</code>).
+	 */
+	public static < T extends NativeType< T >> Img< T > appendSlice( final Img< T > stack, final RandomAccessibleInterval< T > slice ) {
+		final int n = stack.numDimensions();
+		final long[] dims = new long[ n ];
+		stack.dimensions( dims );
+		dims[ n - 1 ]++;
+		final Img< T > ret = stack.factory().create( dims, stack.firstElement() );
+		appendSlice( stack, slice, ret );
+		return ret;
+	}
+
+	/**
+	 * Fills <code>target</code> with all slices of <code>stack</code> followed
+	 * by the given <code>slice</code>.
+	 *
+	 * @param stack
+	 *            - the n-dimensional stack to append to.
+	 * @param slice
+	 *            - an (n-1)-dimensional, zero-min slice of the same size as
+	 *            the slices of <code>stack</code>.
+	 * @param target
+	 *            - an n-dimensional, zero-min image that is one slice longer
+	 *            than <code>stack</code>.
+	 */
+	public static < T extends Type< T >> void appendSlice( final Img< T > stack, final RandomAccessibleInterval< T > slice, final Img< T > target ) {
+		final int n = stack.numDimensions();
+		if ( stack.iterationOrder() instanceof FlatIterationOrder && target.iterationOrder() instanceof FlatIterationOrder ) {
+			// flat iteration order, hence the old stack is a prefix of the new one
+			final Cursor< T > sourceCursor = stack.cursor();
+			final Cursor< T > targetCursor = target.cursor();
+			while ( sourceCursor.hasNext() ) {
+				targetCursor.next().set( sourceCursor.next() );
+			}
+		} else {
+			copy( stack, Views.iterable( Views.interval( target, stack ) ) );
+		}
+		copy( slice, Views.iterable( Views.hyperSlice( target, n - 1, target.dimension( n - 1 ) - 1 ) ) );
+	}
+
 	public static < T extends NativeType< T >> Img< T > createEmptyArrayImgLike( final RandomAccessibleInterval< ? > blueprint, final T type ) {
 		final long[] dims = new long[ blueprint.numDimensions() ];
 		for ( int i = 0; i < blueprint.numDimensions(); i++ ) {
@@ -6,12 +6,14 @@ package com.jug.util;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
+import net.imglib2.Cursor;
 import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
-import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.algorithm.stats.Normalize;
 import net.imglib2.exception.IncompatibleTypeException;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
@@ -23,6 +25,8 @@ import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.view.Views;
 
+import com.jug.loops.ParallelLoops;
+
 /**
  * @author jug
  *
@@ -42,33 +46,141 @@ public class DoubleTypeImgLoader {
 	 */
 	public static < T extends RealType< T > & NativeType< T > > List< Img< DoubleType >> loadTiffsFromFolder( final String strFolder ) throws ImgIOException, IncompatibleTypeException, Exception {
 
+		final File[] listOfFiles = listTiffsInFolder( strFolder );
+
+		final ImgFactory< ? > imgFactory = new ArrayImgFactory< T >();
+		final List< Img< DoubleType > > images = new ArrayList< Img< DoubleType > >();
+		for ( int i = 0; i < listOfFiles.length; i++ ) {
+			if ( listOfFiles[ i ].isFile() ) {
+				// System.out.println("Loading file '" + listOfFiles[i].getName() +"' ...");
+				final Img< DoubleType > image = new ImgOpener().openImg( listOfFiles[ i ].getAbsolutePath(), imgFactory );
+				images.add( image );
+			}
+		}
+		return images;
+	}
+
+
+	/**
+	 * Lists all files containing ".tif" in the folder given by foldername.
+	 *
+	 * @param strFolder
+	 *            String pointing to folder containing images (ending with
+	 *            '.tif')
+	 * @return array of all matching files
+	 * @throws Exception
+	 */
+	public static File[] listTiffsInFolder( final String strFolder ) throws Exception {
 		final File folder = new File( strFolder );
 		final FilenameFilter filter = new FilenameFilter() {
 
 			@Override
 			public boolean accept( final File dir, final String name ) {
-				return name.contains( ".tif" );
+				return name.contains( ".tif" ) && new File( dir, name ).isFile();
 			}
 		};
 		final File[] listOfFiles = folder.listFiles( filter );
 		if ( listOfFiles == null )
 			throw new Exception( "Given argument is not a valid folder!" );
+		// listFiles does not guarantee any order
+		Arrays.sort( listOfFiles, NATURAL_ORDER );
+		return listOfFiles;
+	}
 
-		final ImgFactory< ? > imgFactory = new ArrayImgFactory< T >();
-		final List< Img< DoubleType > > images = new ArrayList< Img< DoubleType > >();
-		for ( int i = 0; i < listOfFiles.length; i++ ) {
-			if ( listOfFiles[ i ].isFile() ) {
-				// System.out.println("Loading file '" + listOfFiles[i].getName() +"' ...");
-				final Img< DoubleType > image = new ImgOpener().openImg( listOfFiles[ i ].getAbsolutePath(), imgFactory );
-				images.add( image );
+	/**
+	 * Orders files by name, comparing embedded numbers by their value (e.g.
+	 * 't2.tif' comes before 't10.tif').
+	 */
+	public static final Comparator< File > NATURAL_ORDER = new Comparator< File >() {
+
+		@Override
+		public int compare( final File f1, final File f2 ) {
+			final String s1 = f1.getName();
+			final String s2 = f2.getName();
+			int i1 = 0, i2 = 0;
+			while ( i1 < s1.length() && i2 < s2.length() ) {
+				final char c1 = s1.charAt( i1 );
+				final char c2 = s2.charAt( i2 );
+				if ( Character.isDigit( c1 ) && Character.isDigit( c2 ) ) {
+					// compare whole numbers: skip leading zeros, then the longer number is larger
+					int end1 = i1, end2 = i2;
+					while ( end1 < s1.length() && Character.isDigit( s1.charAt( end1 ) ) ) end1++;
+					while ( end2 < s2.length() && Character.isDigit( s2.charAt( end2 ) ) ) end2++;
+					int start1 = i1, start2 = i2;
+					while ( start1 < end1 - 1 && s1.charAt( start1 ) == '0' ) start1++;
+					while ( start2 < end2 - 1 && s2.charAt( start2 ) == '0' ) start2++;
+					if ( end1 - start1 != end2 - start2 ) { return ( end1 - start1 ) - ( end2 - start2 ); }
+					final int cmp = s1.substring( start1, end1 ).compareTo( s2.substring( start2, end2 ) );
+					if ( cmp != 0 ) { return cmp; }
+					i1 = end1;
+					i2 = end2;
+				} else {
+					if ( c1 != c2 ) { return c1 - c2; }
+					i1++;
+					i2++;
+				}
 			}
+			if ( i1 < s1.length() || i2 < s2.length() ) { return ( s1.length() - i1 ) - ( s2.length() - i2 ); }
+			// equal up to leading zeros
+			return s1.compareTo( s2 );
 		}
-		return images;
+	};
+
+	/**
+	 * Loads a single tiff file into a 2d Img, normalized to [0,1].
+	 *
+	 * @param file
+	 *            the tiff to be loaded.
+	 * @return 2d Img, normalized to [0,1]
+	 * @throws ImgIOException
+	 * @throws IncompatibleTypeException
+	 */
+	public static < T extends RealType< T > & NativeType< T > > Img< DoubleType > loadNormalizedTiff( final File file ) throws ImgIOException, IncompatibleTypeException {
+		final Img< DoubleType > image = openTiff( file );
+
+		final Img< DoubleType > frame = new ArrayImgFactory< DoubleType >().create( new long[] { image.dimension( 0 ), image.dimension( 1 ) }, new DoubleType() );
+		copyNormalized( image, frame );
+		return frame;
 	}
 
+	/**
+	 * Copies <code>source</code> into <code>target</code> and normalizes the
+	 * copied values to [0,1]. Min and max are taken from <code>source</code>,
+	 * such that <code>target</code> only ever receives normalized values
+	 * (it might not be able to store anything else, see
+	 * <code>DoubleTypeStackFactory</code>).
+	 *
+	 * @param source
+	 * @param target
+	 *            a 2d target of the size of <code>source</code>.
+	 */
+	private static void copyNormalized( final RandomAccessible< ? extends RealType< ? > > source, final IterableInterval< DoubleType > target ) {
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+
+		final Cursor< DoubleType > targetCursor = target.localizingCursor();
+		final RandomAccess< ? extends RealType< ? > > sourceRandomAccess = source.randomAccess();
+		while ( targetCursor.hasNext() ) {
+			targetCursor.fwd();
+			sourceRandomAccess.setPosition( targetCursor );
+			final double v = sourceRandomAccess.get().getRealDouble();
+			if ( v < min ) min = v;
+			if ( v > max ) max = v;
+		}
+
+		final double range = max - min;
+		targetCursor.reset();
+		while ( targetCursor.hasNext() ) {
+			targetCursor.fwd();
+			sourceRandomAccess.setPosition( targetCursor );
+			targetCursor.get().set( ( range > 0 ) ? ( sourceRandomAccess.get().getRealDouble() - min ) / range : 0.0 );
+		}
+	}
 
 	/**
 	 * Loads all files containing ".tif" from a folder given by foldername.
+	 * Files are decoded concurrently (using as many threads as there are
+	 * processors).
 	 *
 	 * @param strFolder
 	 *            String pointing to folder containing images (ending with
@@ -79,27 +191,76 @@ public class DoubleTypeImgLoader {
 	 * @throws Exception
 	 */
 	public static < T extends RealType< T > & NativeType< T > > Img< DoubleType > loadStackOfTiffsFromFolder( final String strFolder ) throws ImgIOException, IncompatibleTypeException, Exception {
+		return loadStackOfTiffsFromFolder( strFolder, Runtime.getRuntime().availableProcessors() );
+	}
 
-		final List< Img< DoubleType >> imageList = loadTiffsFromFolder( strFolder );
+	/**
+	 * Loads all files containing ".tif" from a folder given by foldername.
+	 * Files are decoded concurrently, each one is directly copied into its
+	 * slice of the stack and normalized to [0,1] in the same pass.
+	 *
+	 * @param strFolder
+	 *            String pointing to folder containing images (ending with
+	 *            '.tif')
+	 * @param numThreads
+	 *            the number of files decoded concurrently.
+	 * @return 3d Img, normalized to [0,1]
+	 * @throws Exception
+	 *             if the folder or any of the files could not be read, or if
+	 *             not all files have the same size.
+	 */
+	public static < T extends RealType< T > & NativeType< T > > Img< DoubleType > loadStackOfTiffsFromFolder( final String strFolder, final int numThreads ) throws Exception {
+		return loadStackOfTiffsFromFolder( strFolder, numThreads, new DoubleTypeStackFactory( DoubleTypeStackFactory.PIXEL_TYPE_DOUBLE ) );
+	}
 
-		Img< DoubleType > stack = null;
-		final long width = imageList.get( 0 ).dimension( 0 );
-		final long height = imageList.get( 0 ).dimension( 1 );
-		final long frames = imageList.size();
+	/**
+	 * Loads all files containing ".tif" from a folder given by foldername.
+	 * Files are decoded concurrently, each one is directly copied into its
+	 * slice of the stack and normalized to [0,1] in the same pass.
+	 *
+	 * @param strFolder
+	 *            String pointing to folder containing images (ending with
+	 *            '.tif')
+	 * @param numThreads
+	 *            the number of files decoded concurrently.
+	 * @param stackFactory
+	 *            creates the returned stack (determines its pixel storage).
+	 * @return 3d Img, normalized to [0,1]
+	 * @throws Exception
+	 *             if the folder or any of the files could not be read, or if
+	 *             not all files have the same size.
+	 */
+	public static < T extends RealType< T > & NativeType< T > > Img< DoubleType > loadStackOfTiffsFromFolder( final String strFolder, final int numThreads, final DoubleTypeStackFactory stackFactory ) throws Exception {
+		final File[] listOfFiles = listTiffsInFolder( strFolder );
+		if ( listOfFiles.length == 0 ) throw new Exception( "Given folder does not contain any tiffs!" );
 
-		stack = new ArrayImgFactory< DoubleType >().create( new long[] { width, height, frames }, new DoubleType() );
+		// the first file determines the size of the stack
+		final Img< DoubleType > first = openTiff( listOfFiles[ 0 ] );
+		final long width = first.dimension( 0 );
+		final long height = first.dimension( 1 );
+		final Img< DoubleType > stack = stackFactory.create( new long[] { width, height, listOfFiles.length } );
+		copyNormalized( first, Views.iterable( Views.hyperSlice( stack, 2, 0 ) ) );
 
-		// Add images to stack...
-		int i = 0;
-		for ( final RandomAccessible< DoubleType > image : imageList ) {
-			final RandomAccessibleInterval< DoubleType > viewZSlize = Views.hyperSlice( stack, 2, i );
-			final IterableInterval< DoubleType > iterZSlize = Views.iterable( viewZSlize );
+		// Add all other images to stack...
+		ParallelLoops.forEach( listOfFiles.length - 1, numThreads, new ParallelLoops.Body() {
 
-			DataMover.copy( image, iterZSlize );
-			Normalize.normalize( iterZSlize, new DoubleType( 0.0 ), new DoubleType( 1.0 ) );
-			i++;
-		}
+			@Override
+			public void run( final int i ) throws Exception {
+				final Img< DoubleType > image = openTiff( listOfFiles[ i + 1 ] );
+				if ( image.dimension( 0 ) != width || image.dimension( 1 ) != height ) { throw new Exception( "'" + listOfFiles[ i + 1 ].getName() + "' differs in size from '" + listOfFiles[ 0 ].getName() + "'!" ); }
+				copyNormalized( image, Views.iterable( Views.hyperSlice( stack, 2, i + 1 ) ) );
+			}
+		} );
 
 		return stack;
 	}
+
+	/**
+	 * Opens a single tiff file (with its own <code>ImgOpener</code>, such that
+	 * this can be called concurrently).
+	 */
+	private static < T extends RealType< T > & NativeType< T > > Img< DoubleType > openTiff( final File file ) throws ImgIOException, IncompatibleTypeException {
+		final ImgFactory< ? > imgFactory = new ArrayImgFactory< T >();
+		return new ImgOpener().openImg( file.getAbsolutePath(), imgFactory );
+	}
 }
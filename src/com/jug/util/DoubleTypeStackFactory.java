@@ -0,0 +1,213 @@
+/**
+ *
+ */
+package com.jug.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.DoubleAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.view.Views;
+
+/**
+ * Creates the (large) <code>DoubleType</code> image stacks of the pipeline.
+ * All computations still see <code>DoubleType</code>, but depending on the
+ * chosen pixel type the values are stored as
+ * <li>"double": 8 bytes per pixel (exact),
+ * <li>"float": 4 bytes per pixel (single precision),
+ * <li>"uint16": 2 bytes per pixel (fixed point in [0,1]; all stacks of the
+ * pipeline are normalized to this range).
+ * Depending on the chosen storage mode the pixels are kept
+ * <li>"heap": in a single array on the heap (at most 2^31 pixels),
+ * <li>"mapped": in one memory-mapped plane per frame (off heap, paged in and
+ * out by the OS on demand). This allows to process stacks larger than the
+ * heap.
+ *
+ * @author jug
+ */
+public class DoubleTypeStackFactory {
+
+	// -------------------------------------------------------------------------------------
+	// statics
+	// -------------------------------------------------------------------------------------
+	public static final String PIXEL_TYPE_DOUBLE = "double";
+	public static final String PIXEL_TYPE_FLOAT = "float";
+	public static final String PIXEL_TYPE_UINT16 = "uint16";
+
+	public static final String STORAGE_MODE_HEAP = "heap";
+	public static final String STORAGE_MODE_MAPPED = "mapped";
+
+	// -------------------------------------------------------------------------------------
+	// fields
+	// -------------------------------------------------------------------------------------
+	private final String pixelType;
+	private final String storageMode;
+	private final File storageDir;
+
+	// -------------------------------------------------------------------------------------
+	// construction
+	// -------------------------------------------------------------------------------------
+	/**
+	 * @param pixelType
+	 *            one of <code>PIXEL_TYPE_DOUBLE</code>,
+	 *            <code>PIXEL_TYPE_FLOAT</code>, or
+	 *            <code>PIXEL_TYPE_UINT16</code>.
+	 */
+	public DoubleTypeStackFactory( final String pixelType ) {
+		this( pixelType, STORAGE_MODE_HEAP, null );
+	}
+
+	/**
+	 * @param pixelType
+	 *            one of <code>PIXEL_TYPE_DOUBLE</code>,
+	 *            <code>PIXEL_TYPE_FLOAT</code>, or
+	 *            <code>PIXEL_TYPE_UINT16</code>.
+	 * @param storageMode
+	 *            one of <code>STORAGE_MODE_HEAP</code> or
+	 *            <code>STORAGE_MODE_MAPPED</code>.
+	 * @param storageDir
+	 *            the folder the files backing mapped stacks are created in
+	 *            (only used with <code>STORAGE_MODE_MAPPED</code>).
+	 */
+	public DoubleTypeStackFactory( final String pixelType, final String storageMode, final File storageDir ) {
+		if ( !PIXEL_TYPE_DOUBLE.equals( pixelType ) && !PIXEL_TYPE_FLOAT.equals( pixelType ) && !PIXEL_TYPE_UINT16.equals( pixelType ) ) { throw new IllegalArgumentException( "Unknown pixel type '" + pixelType + "'!" ); }
+		if ( !STORAGE_MODE_HEAP.equals( storageMode ) && !STORAGE_MODE_MAPPED.equals( storageMode ) ) { throw new IllegalArgumentException( "Unknown storage mode '" + storageMode + "'!" ); }
+		this.pixelType = pixelType;
+		this.storageMode = storageMode;
+		this.storageDir = storageDir;
+	}
+
+	// -------------------------------------------------------------------------------------
+	// getters
+	// -------------------------------------------------------------------------------------
+	public String getPixelType() {
+		return pixelType;
+	}
+
+	public String getStorageMode() {
+		return storageMode;
+	}
+
+	/**
+	 * @return the number of bytes a pixel of the created images occupies.
+	 */
+	public int getBytesPerPixel() {
+		if ( PIXEL_TYPE_FLOAT.equals( pixelType ) ) return 4;
+		if ( PIXEL_TYPE_UINT16.equals( pixelType ) ) return 2;
+		return 8;
+	}
+
+	/**
+	 * @return the number of heap bytes a pixel of the created images
+	 *         occupies (0 for mapped stacks).
+	 */
+	public int getHeapBytesPerPixel() {
+		return STORAGE_MODE_MAPPED.equals( storageMode ) ? 0 : getBytesPerPixel();
+	}
+
+	// -------------------------------------------------------------------------------------
+	// methods
+	// -------------------------------------------------------------------------------------
+	/**
+	 * @param dims
+	 * @return a new (zero filled) image of the given dimensions.
+	 */
+	public Img< DoubleType > create( final long[] dims ) {
+		if ( STORAGE_MODE_MAPPED.equals( storageMode ) ) { return createMapped( dims ); }
+
+		long numPixels = 1;
+		for ( final long dim : dims ) {
+			numPixels *= dim;
+		}
+		if ( numPixels > Integer.MAX_VALUE ) { throw new IllegalArgumentException( "Image stack too large for a single array (" + numPixels + " pixels), use storage mode '" + STORAGE_MODE_MAPPED + "'!" ); }
+		if ( PIXEL_TYPE_DOUBLE.equals( pixelType ) ) { return new ArrayImgFactory< DoubleType >().create( dims, new DoubleType() ); }
+		if ( PIXEL_TYPE_FLOAT.equals( pixelType ) ) {
+			return wrap( new FloatBackedDoubleArray( ( int ) numPixels ), dims );
+		} else {
+			return wrap( new UnsignedShortBackedDoubleArray( ( int ) numPixels ), dims );
+		}
+	}
+
+	/**
+	 * @param interval
+	 * @return a new (zero filled) image of the size of the given interval.
+	 */
+	public Img< DoubleType > create( final RandomAccessibleInterval< ? > interval ) {
+		final long[] dims = new long[ interval.numDimensions() ];
+		interval.dimensions( dims );
+		return create( dims );
+	}
+
+	/**
+	 * @param img
+	 * @return a copy of the given image, stored using this factories pixel
+	 *         type.
+	 */
+	public Img< DoubleType > copy( final Img< DoubleType > img ) {
+		final Img< DoubleType > ret = create( img );
+		if ( img.iterationOrder().equals( ret.iterationOrder() ) ) {
+			final Cursor< DoubleType > src = img.cursor();
+			final Cursor< DoubleType > dst = ret.cursor();
+			while ( src.hasNext() ) {
+				dst.next().set( src.next() );
+			}
+		} else {
+			DataMover.copy( img, Views.iterable( ret ) );
+		}
+		return ret;
+	}
+
+	/**
+	 * @param stack
+	 *            an image of dimensionality n+1.
+	 * @param slice
+	 *            an image of dimensionality n with the same size as the
+	 *            hyperslices of <code>stack</code>.
+	 * @return a new image, stored using this factories pixel type, containing
+	 *         all slices of <code>stack</code> followed by <code>slice</code>.
+	 */
+	public Img< DoubleType > appendSlice( final Img< DoubleType > stack, final RandomAccessibleInterval< DoubleType > slice ) {
+		final long[] dims = new long[ stack.numDimensions() ];
+		stack.dimensions( dims );
+		dims[ dims.length - 1 ]++;
+		final Img< DoubleType > ret = create( dims );
+		DataMover.appendSlice( stack, slice, ret );
+		return ret;
+	}
+
+	/**
+	 * Creates a <code>PlanarImg</code> with one memory-mapped plane per
+	 * frame, all backed by one (temporary) file.
+	 */
+	private Img< DoubleType > createMapped( final long[] dims ) {
+		final MappedStackFile file;
+		try {
+			file = new MappedStackFile( storageDir );
+		}
+		catch ( final IOException e ) {
+			throw new RuntimeException( "File for mapped image stack could not be created in '" + storageDir.getAbsolutePath() + "'!", e );
+		}
+		try {
+			final PlanarImg< DoubleType, MappedDoubleArray > img = new PlanarImg< DoubleType, MappedDoubleArray >( new MappedDoubleArray( file, getBytesPerPixel() ), dims, 1 );
+			img.setLinkedType( new DoubleType( img ) );
+			return img;
+		}
+		finally {
+			file.release();
+		}
+	}
+
+	private static < A extends ArrayDataAccess< A > & DoubleAccess > Img< DoubleType > wrap( final A access, final long[] dims ) {
+		final ArrayImg< DoubleType, A > img = new ArrayImg< DoubleType, A >( access, dims, 1 );
+		img.setLinkedType( new DoubleType( img ) );
+		return img;
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ *
+ */
+package com.jug.util;
+
+import net.imglib2.img.basictypeaccess.DoubleAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+
+/**
+ * A <code>DoubleAccess</code> that stores its values in a
+ * <code>float[]</code>. Used as storage of <code>DoubleType</code> images
+ * that do not need double precision, at half the memory.
+ *
+ * @author jug
+ */
+public class FloatBackedDoubleArray implements DoubleAccess, ArrayDataAccess< FloatBackedDoubleArray > {
+
+	protected float data[];
+
+	public FloatBackedDoubleArray( final int numEntities ) {
+		this.data = new float[ numEntities ];
+	}
+
+	public FloatBackedDoubleArray( final float[] data ) {
+		this.data = data;
+	}
+
+	public void close() {
+		data = null;
+	}
+
+	@Override
+	public double getValue( final int index ) {
+		return data[ index ];
+	}
+
+	@Override
+	public void setValue( final int index, final double value ) {
+		data[ index ] = ( float ) value;
+	}
+
+	@Override
+	public FloatBackedDoubleArray createArray( final int numEntities ) {
+		return new FloatBackedDoubleArray( numEntities );
+	}
+
+	@Override
+	public float[] getCurrentStorageArray() {
+		return data;
+	}
+}
@@ -0,0 +1,412 @@
+/**
+ *
+ */
+package com.jug.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import net.imglib2.Localizable;
+import net.imglib2.Point;
+import net.imglib2.algorithm.componenttree.ComponentTree;
+import net.imglib2.algorithm.componenttree.ComponentTreeNode;
+import net.imglib2.type.numeric.real.DoubleType;
+
+/**
+ * Component tree of a 1d function (dark to bright), built directly on a
+ * primitive array.
+ * Its nodes are the same as the ones of
+ * <code>FilteredComponentTree.buildComponentTree( fkt, new DoubleType(), minComponentSize, Long.MAX_VALUE, true )</code>:
+ * all distinct connected components of all sublevel sets of the function
+ * that contain at least <code>minComponentSize</code> positions. The value
+ * of a node is the level at which it was emitted (the largest function value
+ * within it), its parent the smallest node containing it.
+ * In 1d each component is an interval, hence nodes are stored as flat arrays
+ * (min, max, value, min value, depth, parent, first child, next sibling),
+ * computed once when the tree is built. Interval, center, size, values and
+ * depth of a node
+ * are therefore known without iterating its positions or walking the tree.
+ * Children are ordered from left to right.
+ *
+ * @author jug
+ */
+public class IntervalComponentTree implements ComponentTree< DoubleType, IntervalComponentTree.Node > {
+
+	// -------------------------------------------------------------------------------------
+	// inner classes
+	// -------------------------------------------------------------------------------------
+	/**
+	 * A node of an <code>IntervalComponentTree</code>. Only a handle, all data
+	 * lives in the arrays of the tree. There is exactly one instance per
+	 * node.
+	 */
+	public static class Node implements ComponentTreeNode< DoubleType, Node > {
+
+		private final IntervalComponentTree tree;
+		private final int idx;
+
+		private Node( final IntervalComponentTree tree, final int idx ) {
+			this.tree = tree;
+			this.idx = idx;
+		}
+
+		/**
+		 * @return the first position covered by this node.
+		 */
+		public int getMin() {
+			return tree.nodeMin[ idx ];
+		}
+
+		/**
+		 * @return the last position covered by this node.
+		 */
+		public int getMax() {
+			return tree.nodeMax[ idx ];
+		}
+
+		/**
+		 * @return the center of the interval covered by this node.
+		 */
+		public double getCenter() {
+			return 0.5 * ( getMin() + getMax() );
+		}
+
+		/**
+		 * @return the number of ancestors of this node (0 for roots).
+		 */
+		public int getDepth() {
+			return tree.nodeDepth[ idx ];
+		}
+
+		/**
+		 * @return the smallest function value within this node.
+		 */
+		public double getMinValue() {
+			return tree.nodeMinValue[ idx ];
+		}
+
+		/**
+		 * @return the largest function value within this node (the level it
+		 *         was emitted at).
+		 */
+		public double getMaxValue() {
+			return tree.nodeValue[ idx ];
+		}
+
+		@Override
+		public DoubleType getValue() {
+			return new DoubleType( tree.nodeValue[ idx ] );
+		}
+
+		@Override
+		public long getSize() {
+			return getMax() - getMin() + 1;
+		}
+
+		@Override
+		public Node getParent() {
+			final int parent = tree.nodeParent[ idx ];
+			return ( parent == -1 ) ? null : tree.nodes[ parent ];
+		}
+
+		@Override
+		public List< Node > getChildren() {
+			final List< Node > children = new ArrayList< Node >();
+			for ( int c = tree.nodeFirstChild[ idx ]; c != -1; c = tree.nodeNextSibling[ c ] ) {
+				children.add( tree.nodes[ c ] );
+			}
+			return children;
+		}
+
+		/**
+		 * Iterates all positions covered by this node, from left to right.
+		 */
+		@Override
+		public Iterator< Localizable > iterator() {
+			return new Iterator< Localizable >() {
+
+				private int next = getMin();
+
+				@Override
+				public boolean hasNext() {
+					return next <= getMax();
+				}
+
+				@Override
+				public Localizable next() {
+					if ( !hasNext() ) throw new NoSuchElementException();
+					return new Point( new long[] { next++ } );
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+
+	// -------------------------------------------------------------------------------------
+	// fields
+	// -------------------------------------------------------------------------------------
+	private final double[] fkt;
+
+	private int numNodes;
+	private int[] nodeMin;
+	private int[] nodeMax;
+	private double[] nodeValue;
+	private double[] nodeMinValue;
+	private int[] nodeDepth;
+	private int[] nodeParent;
+	private int[] nodeFirstChild;
+	private int[] nodeNextSibling;
+	private Node[] nodes;
+
+	private final LinkedHashSet< Node > roots = new LinkedHashSet< Node >();
+
+	// -------------------------------------------------------------------------------------
+	// construction
+	// -------------------------------------------------------------------------------------
+	private IntervalComponentTree( final double[] fkt ) {
+		this.fkt = fkt;
+		final int capacity = Math.max( 1, fkt.length );
+		nodeMin = new int[ capacity ];
+		nodeMax = new int[ capacity ];
+		nodeValue = new double[ capacity ];
+		nodeMinValue = new double[ capacity ];
+		nodeParent = new int[ capacity ];
+		nodeFirstChild = new int[ capacity ];
+		nodeNextSibling = new int[ capacity ];
+	}
+
+	/**
+	 * Builds the component tree of the given function.
+	 *
+	 * @param fkt
+	 *            the function values (not copied, must not be changed
+	 *            afterwards).
+	 * @param minComponentSize
+	 *            components covering less positions are not part of the
+	 *            tree.
+	 * @return the component tree.
+	 */
+	public static IntervalComponentTree buildComponentTree( final double[] fkt, final int minComponentSize ) {
+		final IntervalComponentTree tree = new IntervalComponentTree( fkt );
+		tree.build( Math.max( 1, minComponentSize ) );
+		return tree;
+	}
+
+	/**
+	 * Floods the function from its lowest to its highest value, using
+	 * union-find on the positions sorted by value. Whenever all positions of
+	 * a level are flooded, each component that changed becomes a node (if it
+	 * is large enough), with the latest nodes of the components it was built
+	 * from as children.
+	 */
+	private void build( final int minComponentSize ) {
+		final int n = fkt.length;
+		final int[] sorted = sortByValue( fkt );
+
+		// union-find over positions, component data stored at the roots
+		final int[] uf = new int[ n ];
+		final int[] compMin = new int[ n ];
+		final int[] compMax = new int[ n ];
+		final double[] compMinValue = new double[ n ];
+		final int[] compNode = new int[ n ]; // latest node of a component (or -1)
+		final int[] compPending = new int[ n ]; // list of the children of its next node
+		final boolean[] touched = new boolean[ n ];
+		final int[] touchedRoots = new int[ n ];
+		// links the nodes in the pending lists (indexed by node)
+		int[] pendingNext = new int[ nodeMin.length ];
+		Arrays.fill( uf, -1 ); // not yet flooded
+
+		int i = 0;
+		while ( i < n ) {
+			final double level = fkt[ sorted[ i ] ];
+			int numTouched = 0;
+
+			// flood all positions of this level
+			for ( ; i < n && Double.compare( fkt[ sorted[ i ] ], level ) == 0; i++ ) {
+				final int x = sorted[ i ];
+				uf[ x ] = x;
+				compMin[ x ] = x;
+				compMax[ x ] = x;
+				compMinValue[ x ] = level;
+				compNode[ x ] = -1;
+				compPending[ x ] = -1;
+				touched[ x ] = true;
+				touchedRoots[ numTouched++ ] = x;
+
+				int root = x;
+				for ( int neighbor = x - 1; neighbor <= x + 1; neighbor += 2 ) {
+					if ( neighbor < 0 || neighbor >= n || uf[ neighbor ] == -1 ) continue;
+					final int other = find( uf, neighbor );
+					if ( !touched[ other ] ) {
+						// first change of this component on this level
+						touched[ other ] = true;
+						touchedRoots[ numTouched++ ] = other;
+						if ( compNode[ other ] != -1 ) {
+							pendingNext[ compNode[ other ] ] = compPending[ other ];
+							compPending[ other ] = compNode[ other ];
+						}
+					}
+					// merge 'root' into 'other'
+					uf[ root ] = other;
+					compMin[ other ] = Math.min( compMin[ other ], compMin[ root ] );
+					compMax[ other ] = Math.max( compMax[ other ], compMax[ root ] );
+					compMinValue[ other ] = Math.min( compMinValue[ other ], compMinValue[ root ] );
+					if ( compPending[ root ] != -1 ) {
+						int last = compPending[ root ];
+						while ( pendingNext[ last ] != -1 ) {
+							last = pendingNext[ last ];
+						}
+						pendingNext[ last ] = compPending[ other ];
+						compPending[ other ] = compPending[ root ];
+					}
+					root = other;
+				}
+			}
+
+			// emit all components that changed on this level
+			for ( int t = 0; t < numTouched; t++ ) {
+				final int r = touchedRoots[ t ];
+				touched[ r ] = false;
+				if ( uf[ r ] != r ) continue; // merged into another component
+				compNode[ r ] = -1;
+				if ( compMax[ r ] - compMin[ r ] + 1 >= minComponentSize ) {
+					compNode[ r ] = addNode( compMin[ r ], compMax[ r ], level, compMinValue[ r ], compPending[ r ], pendingNext );
+					if ( pendingNext.length < nodeMin.length ) {
+						pendingNext = Arrays.copyOf( pendingNext, nodeMin.length );
+					}
+				}
+				compPending[ r ] = -1;
+			}
+		}
+
+		// parents are created after their children
+		nodeDepth = new int[ numNodes ];
+		for ( int k = numNodes - 1; k >= 0; k-- ) {
+			nodeDepth[ k ] = ( nodeParent[ k ] == -1 ) ? 0 : nodeDepth[ nodeParent[ k ] ] + 1;
+		}
+
+		nodes = new Node[ numNodes ];
+		for ( int k = 0; k < numNodes; k++ ) {
+			nodes[ k ] = new Node( this, k );
+			if ( nodeParent[ k ] == -1 ) {
+				roots.add( nodes[ k ] );
+			}
+		}
+	}
+
+	/**
+	 * Adds a node and makes it the parent of the given (pending) nodes, which
+	 * are linked as siblings from left to right.
+	 *
+	 * @return the index of the new node.
+	 */
+	private int addNode( final int min, final int max, final double value, final double minValue, final int firstPending, final int[] pendingNext ) {
+		if ( numNodes == nodeMin.length ) {
+			final int capacity = 2 * numNodes;
+			nodeMin = Arrays.copyOf( nodeMin, capacity );
+			nodeMax = Arrays.copyOf( nodeMax, capacity );
+			nodeValue = Arrays.copyOf( nodeValue, capacity );
+			nodeMinValue = Arrays.copyOf( nodeMinValue, capacity );
+			nodeParent = Arrays.copyOf( nodeParent, capacity );
+			nodeFirstChild = Arrays.copyOf( nodeFirstChild, capacity );
+			nodeNextSibling = Arrays.copyOf( nodeNextSibling, capacity );
+		}
+		final int k = numNodes++;
+		nodeMin[ k ] = min;
+		nodeMax[ k ] = max;
+		nodeValue[ k ] = value;
+		nodeMinValue[ k ] = minValue;
+		nodeParent[ k ] = -1;
+		nodeFirstChild[ k ] = -1;
+		nodeNextSibling[ k ] = -1;
+
+		// insert the children sorted by position (they do not overlap)
+		for ( int c = firstPending; c != -1; c = pendingNext[ c ] ) {
+			nodeParent[ c ] = k;
+			if ( nodeFirstChild[ k ] == -1 || nodeMin[ c ] < nodeMin[ nodeFirstChild[ k ] ] ) {
+				nodeNextSibling[ c ] = nodeFirstChild[ k ];
+				nodeFirstChild[ k ] = c;
+			} else {
+				int prev = nodeFirstChild[ k ];
+				while ( nodeNextSibling[ prev ] != -1 && nodeMin[ nodeNextSibling[ prev ] ] < nodeMin[ c ] ) {
+					prev = nodeNextSibling[ prev ];
+				}
+				nodeNextSibling[ c ] = nodeNextSibling[ prev ];
+				nodeNextSibling[ prev ] = c;
+			}
+		}
+		return k;
+	}
+
+	private static int find( final int[] uf, final int x ) {
+		int root = x;
+		while ( uf[ root ] != root ) {
+			root = uf[ root ];
+		}
+		// path compression
+		int runner = x;
+		while ( uf[ runner ] != root ) {
+			final int next = uf[ runner ];
+			uf[ runner ] = root;
+			runner = next;
+		}
+		return root;
+	}
+
+	/**
+	 * @return all positions of the given function, sorted by increasing
+	 *         function value (merge sort, ties keep their order).
+	 */
+	private static int[] sortByValue( final double[] fkt ) {
+		int[] idx = new int[ fkt.length ];
+		int[] tmp = new int[ fkt.length ];
+		for ( int x = 0; x < idx.length; x++ ) {
+			idx[ x ] = x;
+		}
+		for ( int width = 1; width < idx.length; width *= 2 ) {
+			for ( int lo = 0; lo < idx.length; lo += 2 * width ) {
+				final int mid = Math.min( lo + width, idx.length );
+				final int hi = Math.min( lo + 2 * width, idx.length );
+				int a = lo;
+				int b = mid;
+				for ( int k = lo; k < hi; k++ ) {
+					if ( b >= hi || ( a < mid && Double.compare( fkt[ idx[ a ] ], fkt[ idx[ b ] ] ) <= 0 ) ) {
+						tmp[ k ] = idx[ a++ ];
+					} else {
+						tmp[ k ] = idx[ b++ ];
+					}
+				}
+			}
+			final int[] swap = idx;
+			idx = tmp;
+			tmp = swap;
+		}
+		return idx;
+	}
+
+	// -------------------------------------------------------------------------------------
+	// methods
+	// -------------------------------------------------------------------------------------
+	/**
+	 * @return the root nodes of this tree.
+	 */
+	@Override
+	public LinkedHashSet< Node > roots() {
+		return roots;
+	}
+
+	/**
+	 * @return the number of nodes in this tree.
+	 */
+	public int size() {
+		return numNodes;
+	}
+}
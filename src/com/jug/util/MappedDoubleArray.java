@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package com.jug.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import net.imglib2.img.basictypeaccess.DoubleAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+
+/**
+ * A <code>DoubleAccess</code> that stores its values in a memory-mapped
+ * region of a <code>MappedStackFile</code>, either as double, as float, or as
+ * 16 bit fixed point number in [0,1] (like
+ * <code>UnsignedShortBackedDoubleArray</code>).
+ * Used as planes of <code>PlanarImg</code>s, such that the OS pages frames
+ * in and out on demand instead of keeping them on the heap.
+ *
+ * @author jug
+ */
+public class MappedDoubleArray implements DoubleAccess, ArrayDataAccess< MappedDoubleArray > {
+
+	private final MappedStackFile file;
+	private final int bytesPerPixel;
+
+	private ByteBuffer buffer;
+	private DoubleBuffer doubles;
+	private FloatBuffer floats;
+	private ShortBuffer shorts;
+
+	/**
+	 * Creates an empty access that only serves to create mapped planes (see
+	 * <code>createArray</code>).
+	 *
+	 * @param file
+	 *            the file new planes are mapped from.
+	 * @param bytesPerPixel
+	 *            8 (double), 4 (float), or 2 (16 bit fixed point).
+	 */
+	public MappedDoubleArray( final MappedStackFile file, final int bytesPerPixel ) {
+		if ( bytesPerPixel != 8 && bytesPerPixel != 4 && bytesPerPixel != 2 ) throw new IllegalArgumentException( "Unsupported number of bytes per pixel: " + bytesPerPixel );
+		this.file = file;
+		this.bytesPerPixel = bytesPerPixel;
+	}
+
+	private MappedDoubleArray( final MappedStackFile file, final int bytesPerPixel, final ByteBuffer buffer ) {
+		this( file, bytesPerPixel );
+		this.buffer = buffer;
+		if ( bytesPerPixel == 8 ) {
+			doubles = buffer.asDoubleBuffer();
+		} else if ( bytesPerPixel == 4 ) {
+			floats = buffer.asFloatBuffer();
+		} else {
+			shorts = buffer.asShortBuffer();
+		}
+	}
+
+	public void close() {
+		buffer = null;
+		doubles = null;
+		floats = null;
+		shorts = null;
+	}
+
+	@Override
+	public double getValue( final int index ) {
+		if ( doubles != null ) return doubles.get( index );
+		if ( floats != null ) return floats.get( index );
+		return UnsignedShortBackedDoubleArray.decode( shorts.get( index ) );
+	}
+
+	@Override
+	public void setValue( final int index, final double value ) {
+		if ( doubles != null ) {
+			doubles.put( index, value );
+		} else if ( floats != null ) {
+			floats.put( index, ( float ) value );
+		} else {
+			shorts.put( index, UnsignedShortBackedDoubleArray.encode( value ) );
+		}
+	}
+
+	@Override
+	public MappedDoubleArray createArray( final int numEntities ) {
+		try {
+			return new MappedDoubleArray( file, bytesPerPixel, file.map( ( long ) numEntities * bytesPerPixel ) );
+		}
+		catch ( final IOException e ) {
+			throw new RuntimeException( "Image plane could not be mapped!", e );
+		}
+	}
+
+	@Override
+	public ByteBuffer getCurrentStorageArray() {
+		return buffer;
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ *
+ */
+package com.jug.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A temporary file that hosts the memory-mapped planes of one image stack.
+ * Planes are appended to the file one after the other by <code>map</code>.
+ * Once all planes are mapped the file should be released. Mappings stay
+ * valid after that, the file itself is removed right away (where the OS
+ * permits this) or when the JVM exits.
+ *
+ * @author jug
+ */
+public class MappedStackFile {
+
+	// -------------------------------------------------------------------------------------
+	// fields
+	// -------------------------------------------------------------------------------------
+	private final File file;
+	private RandomAccessFile raf;
+	private long size = 0;
+
+	// -------------------------------------------------------------------------------------
+	// construction
+	// -------------------------------------------------------------------------------------
+	/**
+	 * @param dir
+	 *            the folder the temporary file is created in.
+	 * @throws IOException
+	 */
+	public MappedStackFile( final File dir ) throws IOException {
+		if ( !dir.exists() && !dir.mkdirs() ) throw new IOException( "Folder '" + dir.getAbsolutePath() + "' could not be created!" );
+		file = File.createTempFile( "mm-stack-", ".raw", dir );
+		file.deleteOnExit();
+		raf = new RandomAccessFile( file, "rw" );
+	}
+
+	// -------------------------------------------------------------------------------------
+	// methods
+	// -------------------------------------------------------------------------------------
+	/**
+	 * Appends a zero filled region of the given size to the file and maps it
+	 * into memory.
+	 *
+	 * @param numBytes
+	 * @return the mapped region (in native byte order).
+	 * @throws IOException
+	 */
+	public synchronized ByteBuffer map( final long numBytes ) throws IOException {
+		if ( raf == null ) throw new IOException( "MappedStackFile was already released!" );
+		final ByteBuffer buffer = raf.getChannel().map( FileChannel.MapMode.READ_WRITE, size, numBytes );
+		size += numBytes;
+		return buffer.order( ByteOrder.nativeOrder() );
+	}
+
+	/**
+	 * Closes the file (no further planes can be mapped) and tries to delete
+	 * it. Already mapped planes stay valid.
+	 */
+	public synchronized void release() {
+		if ( raf == null ) return;
+		try {
+			raf.close();
+		}
+		catch ( final IOException e ) {
+			e.printStackTrace();
+		}
+		raf = null;
+		file.delete();
+	}
+}
@@ -0,0 +1,340 @@
+/**
+ *
+ */
+package com.jug.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects wall time, CPU time, allocated bytes and heap usage for the
+ * stages of a MotherMachine run and writes them out as CSV or JSON.
+ * Records are either run-wide (scope <code>RUN</code>) or belong to a single
+ * growth line (scope e.g. <code>"GL#3"</code>).
+ *
+ * Notes on what is measured:
+ * <li>wall time: <code>System.nanoTime()</code> between start and stop.
+ * <li>CPU time: process CPU time for run-wide stages (includes all worker
+ * threads), CPU time of the measuring thread for per-GL stages.
+ * <li>allocated bytes: bytes allocated by the measuring thread plus the
+ * bytes allocated by all worker threads it waited for (workers of
+ * <code>ParallelLoops</code> and of the ILP scheduler report their
+ * allocations via <code>addWorkerAllocatedBytes</code> before the caller
+ * continues).
+ * <li>heap used: used heap (as reported by the <code>MemoryMXBean</code>)
+ * when the stage stopped.
+ * <li>peak heap upper bound: sum of the peak usages of all heap memory
+ * pools. The pools peak at different times, hence this is an upper bound of
+ * the actual peak heap usage. Peaks are reset when a run-wide stage starts,
+ * therefore per-GL records report the bound of their enclosing run-wide
+ * stage so far.
+ * Values that are not supported by the running JVM are reported as -1.
+ *
+ * This class is thread safe.
+ *
+ * @author jug
+ */
+public class PipelineMetrics {
+
+	// -------------------------------------------------------------------------------------
+	// statics
+	// -------------------------------------------------------------------------------------
+	public static final String RUN = "run";
+
+	private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Bytes allocated by worker threads on behalf of the current thread (see
+	 * <code>addWorkerAllocatedBytes</code>).
+	 */
+	private static final ThreadLocal< long[] > workerAllocatedBytes = new ThreadLocal< long[] >() {
+
+		@Override
+		protected long[] initialValue() {
+			return new long[ 1 ];
+		}
+	};
+
+	// -------------------------------------------------------------------------------------
+	// inner classes
+	// -------------------------------------------------------------------------------------
+	/**
+	 * One measured stage. Created by <code>PipelineMetrics.start</code> and
+	 * finalized by calling <code>stop</code> on the same thread.
+	 */
+	public class Stage {
+
+		private final String scope;
+		private final String name;
+
+		private final long startWall;
+		private final long startCpu;
+		private final long startAllocated;
+
+		private long wallNanos = -1;
+		private long cpuNanos = -1;
+		private long allocatedBytes = -1;
+		private long heapUsedBytes = -1;
+		private long peakHeapUpperBoundBytes = -1;
+
+		private Stage( final String scope, final String name ) {
+			this.scope = scope;
+			this.name = name;
+			if ( isRunScope() ) {
+				resetPeakHeap();
+			}
+			this.startCpu = isRunScope() ? getProcessCpuTime() : getThreadCpuTime();
+			this.startAllocated = getAllocatedBytes();
+			this.startWall = System.nanoTime();
+		}
+
+		private boolean isRunScope() {
+			return RUN.equals( scope );
+		}
+
+		/**
+		 * Stops this stage and adds it to the records of the owning
+		 * <code>PipelineMetrics</code>.
+		 */
+		public void stop() {
+			wallNanos = System.nanoTime() - startWall;
+			final long cpu = isRunScope() ? getProcessCpuTime() : getThreadCpuTime();
+			if ( cpu >= 0 && startCpu >= 0 ) {
+				cpuNanos = cpu - startCpu;
+			}
+			final long allocated = getAllocatedBytes();
+			if ( allocated >= 0 && startAllocated >= 0 ) {
+				allocatedBytes = allocated - startAllocated;
+			}
+			heapUsedBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+			peakHeapUpperBoundBytes = getPeakHeapUpperBound();
+
+			synchronized ( records ) {
+				records.add( this );
+			}
+		}
+
+		public String getScope() {
+			return scope;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getWallNanos() {
+			return wallNanos;
+		}
+
+		public long getCpuNanos() {
+			return cpuNanos;
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		public long getHeapUsedBytes() {
+			return heapUsedBytes;
+		}
+
+		public long getPeakHeapUpperBoundBytes() {
+			return peakHeapUpperBoundBytes;
+		}
+	}
+
+	// -------------------------------------------------------------------------------------
+	// fields
+	// -------------------------------------------------------------------------------------
+	private final List< Stage > records = new ArrayList< Stage >();
+
+	private final List< MemoryPoolMXBean > heapPools = new ArrayList< MemoryPoolMXBean >();
+
+	// -------------------------------------------------------------------------------------
+	// construction
+	// -------------------------------------------------------------------------------------
+	public PipelineMetrics() {
+		for ( final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() ) {
+			if ( pool.getType() == MemoryType.HEAP ) {
+				heapPools.add( pool );
+			}
+		}
+		if ( THREAD_BEAN.isThreadCpuTimeSupported() && !THREAD_BEAN.isThreadCpuTimeEnabled() ) {
+			try {
+				THREAD_BEAN.setThreadCpuTimeEnabled( true );
+			}
+			catch ( final UnsupportedOperationException e ) {
+				// CPU times will simply be reported as -1
+			}
+		}
+	}
+
+	// -------------------------------------------------------------------------------------
+	// methods
+	// -------------------------------------------------------------------------------------
+	/**
+	 * Starts measuring a run-wide stage.
+	 *
+	 * @param name
+	 *            the name of the stage (e.g. "load").
+	 * @return the started <code>Stage</code>; call <code>stop()</code> on it.
+	 */
+	public Stage start( final String name ) {
+		return new Stage( RUN, name );
+	}
+
+	/**
+	 * Starts measuring a stage in the given scope.
+	 *
+	 * @param scope
+	 *            the scope, e.g. "GL#3".
+	 * @param name
+	 *            the name of the stage (e.g. "ilp solve").
+	 * @return the started <code>Stage</code>; call <code>stop()</code> on it
+	 *         (from the same thread).
+	 */
+	public Stage start( final String scope, final String name ) {
+		return new Stage( scope, name );
+	}
+
+	/**
+	 * @return a copy of all stages recorded so far.
+	 */
+	public List< Stage > getRecords() {
+		synchronized ( records ) {
+			return new ArrayList< Stage >( records );
+		}
+	}
+
+	/**
+	 * Prints a human readable summary of all run-wide stages.
+	 *
+	 * @param out
+	 */
+	public void printSummary( final PrintStream out ) {
+		out.println( "Pipeline metrics (run-wide stages):" );
+		for ( final Stage s : getRecords() ) {
+			if ( RUN.equals( s.getScope() ) ) {
+				out.println( String.format( "   %-22s wall: %9.1f ms   cpu: %9.1f ms   heap: %8.1f MB   peak heap <= %8.1f MB", s.getName(), toMillis( s.getWallNanos() ), toMillis( s.getCpuNanos() ), toMegaBytes( s.getHeapUsedBytes() ), toMegaBytes( s.getPeakHeapUpperBoundBytes() ) ) );
+			}
+		}
+	}
+
+	/**
+	 * Writes all records into the given CSV-file.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeCsv( final File file ) throws IOException {
+		final Writer out = new OutputStreamWriter( new FileOutputStream( file ) );
+		try {
+			out.write( "scope, stage, wall_ns, cpu_ns, allocated_bytes, heap_used_bytes, peak_heap_upper_bound_bytes\n" );
+			for ( final Stage s : getRecords() ) {
+				out.write( String.format( "%s, %s, %d, %d, %d, %d, %d\n", s.getScope(), s.getName(), s.getWallNanos(), s.getCpuNanos(), s.getAllocatedBytes(), s.getHeapUsedBytes(), s.getPeakHeapUpperBoundBytes() ) );
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes all records into the given JSON-file (an array of objects, one
+	 * per record).
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeJson( final File file ) throws IOException {
+		final Writer out = new OutputStreamWriter( new FileOutputStream( file ) );
+		try {
+			out.write( "[\n" );
+			final List< Stage > stages = getRecords();
+			for ( int i = 0; i < stages.size(); i++ ) {
+				final Stage s = stages.get( i );
+				out.write( String.format( "  { \"scope\": \"%s\", \"stage\": \"%s\", \"wall_ns\": %d, \"cpu_ns\": %d, \"allocated_bytes\": %d, \"heap_used_bytes\": %d, \"peak_heap_upper_bound_bytes\": %d }", escape( s.getScope() ), escape( s.getName() ), s.getWallNanos(), s.getCpuNanos(), s.getAllocatedBytes(), s.getHeapUsedBytes(), s.getPeakHeapUpperBoundBytes() ) );
+				out.write( ( i < stages.size() - 1 ) ? ",\n" : "\n" );
+			}
+			out.write( "]\n" );
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static String escape( final String str ) {
+		return str.replace( "\\", "\\\\" ).replace( "\"", "\\\"" );
+	}
+
+	private static double toMillis( final long nanos ) {
+		return ( nanos < 0 ) ? -1 : nanos / 1e6;
+	}
+
+	private static double toMegaBytes( final long bytes ) {
+		return ( bytes < 0 ) ? -1 : bytes / ( 1024.0 * 1024.0 );
+	}
+
+	private long getProcessCpuTime() {
+		final java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if ( os instanceof com.sun.management.OperatingSystemMXBean ) { return ( ( com.sun.management.OperatingSystemMXBean ) os ).getProcessCpuTime(); }
+		return -1;
+	}
+
+	private long getThreadCpuTime() {
+		if ( !THREAD_BEAN.isCurrentThreadCpuTimeSupported() ) { return -1; }
+		return THREAD_BEAN.getCurrentThreadCpuTime();
+	}
+
+	/**
+	 * @return the bytes allocated by the current thread so far, plus the
+	 *         bytes attributed to it by <code>addWorkerAllocatedBytes</code>,
+	 *         or -1 if not supported by the running JVM.
+	 */
+	public static long getAllocatedBytes() {
+		if ( THREAD_BEAN instanceof com.sun.management.ThreadMXBean ) {
+			final com.sun.management.ThreadMXBean sunThreadBean = ( com.sun.management.ThreadMXBean ) THREAD_BEAN;
+			if ( sunThreadBean.isThreadAllocatedMemorySupported() && sunThreadBean.isThreadAllocatedMemoryEnabled() ) { return sunThreadBean.getThreadAllocatedBytes( Thread.currentThread().getId() ) + workerAllocatedBytes.get()[ 0 ]; }
+		}
+		return -1;
+	}
+
+	/**
+	 * Attributes bytes allocated by worker threads to the current thread
+	 * (which waited for them), such that they are contained in the allocated
+	 * bytes of the stages measured on the current thread.
+	 *
+	 * @param bytes
+	 *            the bytes allocated by the workers (measured with
+	 *            <code>getAllocatedBytes</code> on each worker).
+	 */
+	public static void addWorkerAllocatedBytes( final long bytes ) {
+		if ( bytes > 0 ) {
+			workerAllocatedBytes.get()[ 0 ] += bytes;
+		}
+	}
+
+	private void resetPeakHeap() {
+		for ( final MemoryPoolMXBean pool : heapPools ) {
+			pool.resetPeakUsage();
+		}
+	}
+
+	private long getPeakHeapUpperBound() {
+		long sum = 0;
+		for ( final MemoryPoolMXBean pool : heapPools ) {
+			sum += pool.getPeakUsage().getUsed();
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ *
+ */
+package com.jug.util;
+
+import java.util.Arrays;
+
+/**
+ * The x-positions of all local maxima of all rows of a 2d frame, stored
+ * compactly: the positions of all rows one after the other in a single int
+ * array, plus the index of the first position of each row.
+ * A local maximum is a pixel strictly larger than its left and its right
+ * neighbor (like <code>FindLocalMaxima</code> applied to each row); the first
+ * and the last pixel of a row are never maxima.
+ *
+ * @author jug
+ */
+public class RowMaxima {
+
+	// -------------------------------------------------------------------------------------
+	// fields
+	// -------------------------------------------------------------------------------------
+	/**
+	 * The maxima of row y are <code>positions[ rowStart[ y ] ]</code> to
+	 * <code>positions[ rowStart[ y + 1 ] - 1 ]</code>.
+	 */
+	private final int[] rowStart;
+	private final int[] positions;
+
+	// -------------------------------------------------------------------------------------
+	// construction
+	// -------------------------------------------------------------------------------------
+	private RowMaxima( final int[] rowStart, final int[] positions ) {
+		this.rowStart = rowStart;
+		this.positions = positions;
+	}
+
+	/**
+	 * Finds the local maxima of all rows of a frame stored row by row in
+	 * <code>data</code>. Rows outside <code>[yMin,yMax]</code> and maxima
+	 * outside <code>[xMin,xMax]</code> are skipped (reported as having no
+	 * maxima).
+	 *
+	 * @param data
+	 * @param width
+	 * @param height
+	 * @param yMin
+	 *            first row to be scanned.
+	 * @param yMax
+	 *            last row to be scanned.
+	 * @param xMin
+	 *            smallest x-position to be reported.
+	 * @param xMax
+	 *            largest x-position to be reported.
+	 * @return the found maxima.
+	 */
+	public static RowMaxima find( final double[] data, final int width, final int height, final int yMin, final int yMax, final int xMin, final int xMax ) {
+		final int[] rowStart = new int[ height + 1 ];
+		int[] positions = new int[ 64 ];
+		int n = 0;
+
+		final int x1 = Math.max( 1, xMin );
+		final int x2 = Math.min( width - 2, xMax );
+		for ( int y = 0; y < height; y++ ) {
+			rowStart[ y ] = n;
+			if ( y < yMin || y > yMax ) continue;
+
+			final int row = y * width;
+			for ( int x = x1; x <= x2; x++ ) {
+				final double v = data[ row + x ];
+				if ( v > data[ row + x - 1 ] && v > data[ row + x + 1 ] ) {
+					if ( n == positions.length ) {
+						positions = Arrays.copyOf( positions, 2 * n );
+					}
+					positions[ n++ ] = x;
+				}
+			}
+		}
+		rowStart[ height ] = n;
+		return new RowMaxima( rowStart, Arrays.copyOf( positions, n ) );
+	}
+
+	// -------------------------------------------------------------------------------------
+	// methods
+	// -------------------------------------------------------------------------------------
+	/**
+	 * @return the number of rows of the scanned frame.
+	 */
+	public int numRows() {
+		return rowStart.length - 1;
+	}
+
+	/**
+	 * @return the number of maxima in row <code>y</code>.
+	 */
+	public int size( final int y ) {
+		return rowStart[ y + 1 ] - rowStart[ y ];
+	}
+
+	/**
+	 * @return the x-position of the <code>i</code>-th maximum (from the left)
+	 *         in row <code>y</code>.
+	 */
+	public int get( final int y, final int i ) {
+		return positions[ rowStart[ y ] + i ];
+	}
+}
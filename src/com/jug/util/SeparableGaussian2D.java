@@ -0,0 +1,282 @@
+/**
+ *
+ */
+package com.jug.util;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.view.Views;
+
+/**
+ * Gaussian smoothing of single 2d frames, working on primitive arrays.
+ * Uses the same (normalized, symmetric) kernels and the same mirrored
+ * boundary (double boundary pixels) as
+ * <code>Gauss3.gauss( sigmas, Views.extendMirrorDouble( frame ), target )</code>
+ * and convolves x before y, hence results equal those of Gauss3 (up to
+ * rounding).
+ * Only a given range of rows is written to the target, the x-pass is only
+ * done for rows this range depends on. Instances can be used by many
+ * threads concurrently.
+ *
+ * @author jug
+ */
+public class SeparableGaussian2D {
+
+	// -------------------------------------------------------------------------------------
+	// fields
+	// -------------------------------------------------------------------------------------
+	private final double[] kernelX;
+	private final double[] kernelY;
+
+	/**
+	 * Holds the x-convolved frame (one buffer per thread).
+	 */
+	private final ThreadLocal< double[] > buffer = new ThreadLocal< double[] >();
+
+	/**
+	 * Holds the decoded rows of frames stored in float or 16 bit arrays (one
+	 * buffer per thread).
+	 */
+	private final ThreadLocal< double[] > decoded = new ThreadLocal< double[] >();
+
+	// -------------------------------------------------------------------------------------
+	// construction
+	// -------------------------------------------------------------------------------------
+	public SeparableGaussian2D( final double sigmaX, final double sigmaY ) {
+		kernelX = halfKernel( sigmaX );
+		kernelY = halfKernel( sigmaY );
+	}
+
+	// -------------------------------------------------------------------------------------
+	// methods
+	// -------------------------------------------------------------------------------------
+	/**
+	 * Smoothes slice <code>z</code> of the given stack into
+	 * <code>target</code>. Stacks backed by a single double, float or 16 bit
+	 * array (see <code>DoubleTypeStackFactory</code>) are read directly, other
+	 * stacks via a copy of the slice.
+	 *
+	 * @param stack
+	 *            a zero-min 3d stack.
+	 * @param z
+	 *            the slice to smooth.
+	 * @param target
+	 *            the smoothed frame, stored row by row.
+	 * @param yMin
+	 *            first row to be written to <code>target</code>.
+	 * @param yMax
+	 *            last row to be written to <code>target</code>.
+	 */
+	public void convolve( final Img< DoubleType > stack, final long z, final double[] target, final int yMin, final int yMax ) {
+		final int width = ( int ) stack.dimension( 0 );
+		final int height = ( int ) stack.dimension( 1 );
+
+		if ( !convolveArrayImg( stack, ( int ) ( z * width * height ), target, width, height, yMin, yMax ) ) {
+			convolve( Views.hyperSlice( stack, 2, z ), target, yMin, yMax );
+		}
+	}
+
+	/**
+	 * Smoothes the given frame into <code>target</code>. Frames backed by a
+	 * single double, float or 16 bit array are read directly, other frames via
+	 * a copy.
+	 *
+	 * @param frame
+	 *            a zero-min 2d frame.
+	 * @param target
+	 *            the smoothed frame, stored row by row.
+	 * @param yMin
+	 *            first row to be written to <code>target</code>.
+	 * @param yMax
+	 *            last row to be written to <code>target</code>.
+	 */
+	public void convolve( final RandomAccessibleInterval< DoubleType > frame, final double[] target, final int yMin, final int yMax ) {
+		final int width = ( int ) frame.dimension( 0 );
+		final int height = ( int ) frame.dimension( 1 );
+
+		if ( !convolveArrayImg( frame, 0, target, width, height, yMin, yMax ) ) {
+			final double[] data = new double[ width * height ];
+			final Cursor< DoubleType > cursor = Views.iterable( frame ).localizingCursor();
+			while ( cursor.hasNext() ) {
+				cursor.fwd();
+				data[ cursor.getIntPosition( 0 ) + cursor.getIntPosition( 1 ) * width ] = cursor.get().get();
+			}
+			convolve( data, 0, target, width, height, yMin, yMax );
+		}
+	}
+
+	/**
+	 * Smoothes the frame starting at <code>offset</code> in the storage array
+	 * of <code>img</code>, if <code>img</code> is an <code>ArrayImg</code>
+	 * backed by a double, float or 16 bit array. Float and 16 bit data is
+	 * decoded (only the rows the convolution reads) into a per-thread buffer
+	 * first.
+	 *
+	 * @return false, if <code>img</code> is not stored in one of those arrays
+	 *         (nothing was done).
+	 */
+	@SuppressWarnings( "unchecked" )
+	private boolean convolveArrayImg( final RandomAccessibleInterval< DoubleType > img, final int offset, final double[] target, final int width, final int height, final int yMin, final int yMax ) {
+		if ( !( img instanceof ArrayImg ) ) return false;
+		final Object access = ( ( ArrayImg< DoubleType, ? > ) img ).update( null );
+
+		if ( access instanceof DoubleArray ) {
+			convolve( ( ( DoubleArray ) access ).getCurrentStorageArray(), offset, target, width, height, yMin, yMax );
+			return true;
+		}
+		if ( access instanceof FloatBackedDoubleArray ) {
+			final float[] data = ( ( FloatBackedDoubleArray ) access ).getCurrentStorageArray();
+			final boolean[] needed = getNeededRows( height, yMin, yMax );
+			final double[] frame = getBuffer( decoded, width * height );
+			for ( int y = 0; y < height; y++ ) {
+				if ( !needed[ y ] ) continue;
+				final int row = offset + y * width;
+				final int t = y * width;
+				for ( int x = 0; x < width; x++ ) {
+					frame[ t + x ] = data[ row + x ];
+				}
+			}
+			convolve( frame, 0, target, width, height, yMin, yMax );
+			return true;
+		}
+		if ( access instanceof UnsignedShortBackedDoubleArray ) {
+			final short[] data = ( ( UnsignedShortBackedDoubleArray ) access ).getCurrentStorageArray();
+			final boolean[] needed = getNeededRows( height, yMin, yMax );
+			final double[] frame = getBuffer( decoded, width * height );
+			for ( int y = 0; y < height; y++ ) {
+				if ( !needed[ y ] ) continue;
+				final int row = offset + y * width;
+				final int t = y * width;
+				for ( int x = 0; x < width; x++ ) {
+					frame[ t + x ] = UnsignedShortBackedDoubleArray.decode( data[ row + x ] );
+				}
+			}
+			convolve( frame, 0, target, width, height, yMin, yMax );
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Smoothes a frame stored row by row in <code>source</code>, starting at
+	 * <code>offset</code>, into <code>target</code>.
+	 *
+	 * @param source
+	 * @param offset
+	 *            index of pixel (0,0) of the frame.
+	 * @param target
+	 *            the smoothed frame, stored row by row (starting at 0).
+	 * @param width
+	 * @param height
+	 * @param yMin
+	 *            first row to be written to <code>target</code>.
+	 * @param yMax
+	 *            last row to be written to <code>target</code>.
+	 */
+	public void convolve( final double[] source, final int offset, final double[] target, final int width, final int height, final int yMin, final int yMax ) {
+		final int rx = kernelX.length - 1;
+		final int ry = kernelY.length - 1;
+		final double[] tmp = getBuffer( buffer, width * height );
+
+		// x-pass, only for rows the y-pass will read
+		final boolean[] needed = getNeededRows( height, yMin, yMax );
+		for ( int y = 0; y < height; y++ ) {
+			if ( !needed[ y ] ) continue;
+			final int row = offset + y * width;
+			final int t = y * width;
+			for ( int x = 0; x < width; x++ ) {
+				double sum = kernelX[ 0 ] * source[ row + x ];
+				if ( x >= rx && x < width - rx ) {
+					for ( int i = 1; i <= rx; i++ ) {
+						sum += kernelX[ i ] * ( source[ row + x - i ] + source[ row + x + i ] );
+					}
+				} else {
+					for ( int i = 1; i <= rx; i++ ) {
+						sum += kernelX[ i ] * ( source[ row + mirror( x - i, width ) ] + source[ row + mirror( x + i, width ) ] );
+					}
+				}
+				tmp[ t + x ] = sum;
+			}
+		}
+
+		// y-pass, row by row
+		for ( int y = yMin; y <= yMax; y++ ) {
+			final int t = y * width;
+			for ( int x = 0; x < width; x++ ) {
+				target[ t + x ] = kernelY[ 0 ] * tmp[ t + x ];
+			}
+			for ( int i = 1; i <= ry; i++ ) {
+				final int above = mirror( y - i, height ) * width;
+				final int below = mirror( y + i, height ) * width;
+				final double k = kernelY[ i ];
+				for ( int x = 0; x < width; x++ ) {
+					target[ t + x ] += k * ( tmp[ above + x ] + tmp[ below + x ] );
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return for each row of a frame with the given height, whether the
+	 *         y-pass reads it when writing rows <code>yMin</code> to
+	 *         <code>yMax</code>.
+	 */
+	private boolean[] getNeededRows( final int height, final int yMin, final int yMax ) {
+		final int ry = kernelY.length - 1;
+		final boolean[] needed = new boolean[ height ];
+		for ( int y = yMin; y <= yMax; y++ ) {
+			for ( int i = -ry; i <= ry; i++ ) {
+				needed[ mirror( y + i, height ) ] = true;
+			}
+		}
+		return needed;
+	}
+
+	private static double[] getBuffer( final ThreadLocal< double[] > buffer, final int size ) {
+		double[] ret = buffer.get();
+		if ( ret == null || ret.length < size ) {
+			ret = new double[ size ];
+			buffer.set( ret );
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the position <code>x</code> is mirrored to in a line of
+	 *         <code>n</code> pixels (boundary pixels are repeated, as in
+	 *         <code>Views.extendMirrorDouble</code>).
+	 */
+	private static int mirror( final int x, final int n ) {
+		if ( x >= 0 && x < n ) return x;
+		final int period = 2 * n;
+		int m = x % period;
+		if ( m < 0 ) m += period;
+		return ( m < n ) ? m : period - 1 - m;
+	}
+
+	/**
+	 * @return the normalized half kernel Gauss3 uses for the given sigma.
+	 */
+	private static double[] halfKernel( final double sigma ) {
+		final int size = Math.max( 2, ( int ) ( 3 * sigma + 0.5 ) + 1 );
+		final double twoSqSigma = 2 * sigma * sigma;
+		final double[] kernel = new double[ size ];
+		kernel[ 0 ] = 1;
+		for ( int x = 1; x < size; x++ ) {
+			kernel[ x ] = Math.exp( -( x * x ) / twoSqSigma );
+		}
+		double sum = 0.5;
+		for ( int x = 1; x < size; x++ ) {
+			sum += kernel[ x ];
+		}
+		sum *= 2;
+		for ( int x = 0; x < size; x++ ) {
+			kernel[ x ] /= sum;
+		}
+		return kernel;
+	}
+}
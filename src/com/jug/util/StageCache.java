@@ -0,0 +1,434 @@
+/**
+ *
+ */
+package com.jug.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import com.jug.GrowthLine;
+import com.jug.GrowthLineFrame;
+
+/**
+ * A content-addressed on-disk cache for intermediate results of the
+ * MotherMachine pipeline.
+ * Entries are addressed by keys computed with <code>key(...)</code>, typically
+ * from a fingerprint of the input folder (see <code>fingerprint</code>) and
+ * all parameters the cached stage depends on. Four kinds of entries exist:
+ * <li>the preprocessed (straightened and cropped) raw image stack,
+ * <li>the straightening geometry (transform and ROI) that stack was
+ * produced with,
+ * <li>the detected growth lines (center points of all
+ * <code>GrowthLineFrame</code>s),
+ * <li>the gap-separation values of all <code>GrowthLineFrame</code>s.
+ *
+ * @author jug
+ */
+public class StageCache {
+
+	// -------------------------------------------------------------------------------------
+	// statics
+	// -------------------------------------------------------------------------------------
+	private static final String EXT_RAW = ".raw";
+	private static final String EXT_GEO = ".geo";
+	private static final String EXT_GLS = ".gls";
+	private static final String EXT_SEP = ".sep";
+
+	// -------------------------------------------------------------------------------------
+	// fields
+	// -------------------------------------------------------------------------------------
+	private final File dir;
+
+	// -------------------------------------------------------------------------------------
+	// construction
+	// -------------------------------------------------------------------------------------
+	/**
+	 * @param dir
+	 *            the folder cache entries are stored in (created if it does
+	 *            not exist yet).
+	 */
+	public StageCache( final File dir ) {
+		this.dir = dir;
+		if ( !dir.exists() && !dir.mkdirs() ) {
+			System.out.println( "StageCache: cache folder '" + dir.getAbsolutePath() + "' could not be created!" );
+		}
+	}
+
+	// -------------------------------------------------------------------------------------
+	// keys
+	// -------------------------------------------------------------------------------------
+	/**
+	 * Computes a fingerprint of the given input files (names, sizes and
+	 * modification times). The fingerprint does not depend on the order of
+	 * the given files.
+	 *
+	 * @param files
+	 * @return hex encoded SHA-1 fingerprint.
+	 */
+	public static String fingerprint( final File[] files ) {
+		final File[] sorted = files.clone();
+		Arrays.sort( sorted, new Comparator< File >() {
+
+			@Override
+			public int compare( final File f1, final File f2 ) {
+				return f1.getName().compareTo( f2.getName() );
+			}
+		} );
+		final StringBuilder sb = new StringBuilder();
+		for ( final File f : sorted ) {
+			sb.append( f.getName() ).append( '|' ).append( f.length() ).append( '|' ).append( f.lastModified() ).append( '\n' );
+		}
+		return sha1( sb.toString() );
+	}
+
+	/**
+	 * Combines the given parts (e.g. a parent key and parameter values) into
+	 * a new key.
+	 *
+	 * @param parts
+	 * @return hex encoded SHA-1 of all given parts.
+	 */
+	public static String key( final Object... parts ) {
+		final StringBuilder sb = new StringBuilder();
+		for ( final Object part : parts ) {
+			sb.append( part ).append( '|' );
+		}
+		return sha1( sb.toString() );
+	}
+
+	private static String sha1( final String str ) {
+		try {
+			final byte[] digest = MessageDigest.getInstance( "SHA-1" ).digest( str.getBytes( "UTF-8" ) );
+			final StringBuilder hex = new StringBuilder();
+			for ( final byte b : digest ) {
+				hex.append( String.format( "%02x", b ) );
+			}
+			return hex.toString();
+		}
+		catch ( final NoSuchAlgorithmException e ) {
+			throw new RuntimeException( e );
+		}
+		catch ( final IOException e ) {
+			throw new RuntimeException( e );
+		}
+	}
+
+	// -------------------------------------------------------------------------------------
+	// raw image stack
+	// -------------------------------------------------------------------------------------
+	/**
+	 * @param key
+	 * @param stackFactory
+	 *            creates the returned stack (determines its pixel storage).
+	 * @return the cached image stack, or <code>null</code> if not cached.
+	 */
+	public Img< DoubleType > loadStack( final String key, final DoubleTypeStackFactory stackFactory ) {
+		final File file = new File( dir, key + EXT_RAW );
+		if ( !file.exists() ) return null;
+
+		try {
+			final DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ), 1 << 20 ) );
+			try {
+				final long[] dims = new long[ in.readInt() ];
+				for ( int d = 0; d < dims.length; d++ ) {
+					dims[ d ] = in.readLong();
+				}
+				final Img< DoubleType > img = stackFactory.create( dims );
+				final Cursor< DoubleType > cursor = img.cursor();
+				while ( cursor.hasNext() ) {
+					cursor.next().set( in.readDouble() );
+				}
+				return img;
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch ( final IOException e ) {
+			System.out.println( "StageCache: could not read cached image stack!" );
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @param key
+	 * @param img
+	 *            the image stack to be cached.
+	 */
+	public void saveStack( final String key, final Img< DoubleType > img ) {
+		final File tmp = new File( dir, key + EXT_RAW + ".tmp" );
+		try {
+			final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ), 1 << 20 ) );
+			try {
+				out.writeInt( img.numDimensions() );
+				for ( int d = 0; d < img.numDimensions(); d++ ) {
+					out.writeLong( img.dimension( d ) );
+				}
+				final Cursor< DoubleType > cursor = img.cursor();
+				while ( cursor.hasNext() ) {
+					out.writeDouble( cursor.next().get() );
+				}
+			}
+			finally {
+				out.close();
+			}
+			commit( tmp, new File( dir, key + EXT_RAW ) );
+		}
+		catch ( final IOException e ) {
+			System.out.println( "StageCache: could not write image stack to cache!" );
+			e.printStackTrace();
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return the cached straightening geometry (as given to
+	 *         <code>saveGeometry</code>), or <code>null</code> if not cached.
+	 */
+	public double[] loadGeometry( final String key ) {
+		final File file = new File( dir, key + EXT_GEO );
+		if ( !file.exists() ) return null;
+
+		try {
+			final DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+			try {
+				final double[] values = new double[ in.readInt() ];
+				for ( int i = 0; i < values.length; i++ ) {
+					values[ i ] = in.readDouble();
+				}
+				return values;
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch ( final IOException e ) {
+			System.out.println( "StageCache: could not read cached straightening geometry!" );
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @param key
+	 * @param values
+	 *            the straightening geometry (flattened) the stack cached
+	 *            under the same key was produced with.
+	 */
+	public void saveGeometry( final String key, final double[] values ) {
+		final File tmp = new File( dir, key + EXT_GEO + ".tmp" );
+		try {
+			final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) );
+			try {
+				out.writeInt( values.length );
+				for ( final double v : values ) {
+					out.writeDouble( v );
+				}
+			}
+			finally {
+				out.close();
+			}
+			commit( tmp, new File( dir, key + EXT_GEO ) );
+		}
+		catch ( final IOException e ) {
+			System.out.println( "StageCache: could not write straightening geometry to cache!" );
+			e.printStackTrace();
+			tmp.delete();
+		}
+	}
+
+	// -------------------------------------------------------------------------------------
+	// growth lines
+	// -------------------------------------------------------------------------------------
+	/**
+	 * @param key
+	 * @return the cached growth lines (containing only center points), or
+	 *         <code>null</code> if not cached.
+	 */
+	public List< GrowthLine > loadGrowthLines( final String key ) {
+		final File file = new File( dir, key + EXT_GLS );
+		if ( !file.exists() ) return null;
+
+		try {
+			final DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+			try {
+				final int numGLs = in.readInt();
+				final List< GrowthLine > gls = new ArrayList< GrowthLine >( numGLs );
+				for ( int i = 0; i < numGLs; i++ ) {
+					final GrowthLine gl = new GrowthLine();
+					final int numFrames = in.readInt();
+					for ( int f = 0; f < numFrames; f++ ) {
+						final GrowthLineFrame glf = new GrowthLineFrame();
+						final int numPoints = in.readInt();
+						for ( int p = 0; p < numPoints; p++ ) {
+							glf.addPoint( ( int ) in.readLong(), ( int ) in.readLong(), in.readLong() );
+						}
+						gl.add( glf );
+					}
+					gls.add( gl );
+				}
+				return gls;
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch ( final IOException e ) {
+			System.out.println( "StageCache: could not read cached growth lines!" );
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @param key
+	 * @param gls
+	 *            the growth lines whose center points should be cached.
+	 */
+	public void saveGrowthLines( final String key, final List< GrowthLine > gls ) {
+		final File tmp = new File( dir, key + EXT_GLS + ".tmp" );
+		try {
+			final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) );
+			try {
+				out.writeInt( gls.size() );
+				for ( final GrowthLine gl : gls ) {
+					out.writeInt( gl.size() );
+					for ( final GrowthLineFrame glf : gl.getFrames() ) {
+						out.writeInt( glf.size() );
+						for ( int p = 0; p < glf.size(); p++ ) {
+							out.writeLong( glf.getX( p ) );
+							out.writeLong( glf.getY( p ) );
+							out.writeLong( glf.getZ() );
+						}
+					}
+				}
+			}
+			finally {
+				out.close();
+			}
+			commit( tmp, new File( dir, key + EXT_GLS ) );
+		}
+		catch ( final IOException e ) {
+			System.out.println( "StageCache: could not write growth lines to cache!" );
+			e.printStackTrace();
+			tmp.delete();
+		}
+	}
+
+	// -------------------------------------------------------------------------------------
+	// gap separation values
+	// -------------------------------------------------------------------------------------
+	/**
+	 * Sets the cached gap-separation values on all frames of the given growth
+	 * lines.
+	 *
+	 * @param key
+	 * @param gls
+	 *            the growth lines the cached values belong to.
+	 * @return true, if cached values were found (and set).
+	 */
+	public boolean loadSeparationValues( final String key, final List< GrowthLine > gls ) {
+		final File file = new File( dir, key + EXT_SEP );
+		if ( !file.exists() ) return false;
+
+		try {
+			final DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+			try {
+				final List< double[] > values = new ArrayList< double[] >();
+				if ( in.readInt() != gls.size() ) return false;
+				for ( final GrowthLine gl : gls ) {
+					if ( in.readInt() != gl.size() ) return false;
+					for ( int f = 0; f < gl.size(); f++ ) {
+						final double[] sepValues = new double[ in.readInt() ];
+						for ( int i = 0; i < sepValues.length; i++ ) {
+							sepValues[ i ] = in.readDouble();
+						}
+						values.add( sepValues );
+					}
+				}
+
+				// only set values once all of them could be read
+				int i = 0;
+				for ( final GrowthLine gl : gls ) {
+					for ( final GrowthLineFrame glf : gl.getFrames() ) {
+						glf.setGapSeparationValues( values.get( i++ ) );
+					}
+				}
+				return true;
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch ( final IOException e ) {
+			System.out.println( "StageCache: could not read cached gap separation values!" );
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * @param key
+	 * @param gls
+	 *            the growth lines whose (already computed) gap-separation
+	 *            values should be cached.
+	 */
+	public void saveSeparationValues( final String key, final List< GrowthLine > gls ) {
+		final File tmp = new File( dir, key + EXT_SEP + ".tmp" );
+		try {
+			final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) );
+			try {
+				out.writeInt( gls.size() );
+				for ( final GrowthLine gl : gls ) {
+					out.writeInt( gl.size() );
+					for ( final GrowthLineFrame glf : gl.getFrames() ) {
+						final double[] sepValues = glf.getGapSeparationValues( null );
+						if ( sepValues == null ) throw new IOException( "Gap separation values not computed yet!" );
+						out.writeInt( sepValues.length );
+						for ( final double v : sepValues ) {
+							out.writeDouble( v );
+						}
+					}
+				}
+			}
+			finally {
+				out.close();
+			}
+			commit( tmp, new File( dir, key + EXT_SEP ) );
+		}
+		catch ( final IOException e ) {
+			System.out.println( "StageCache: could not write gap separation values to cache!" );
+			e.printStackTrace();
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Moves a completely written temp file to its final location, such that
+	 * readers never see half written entries.
+	 */
+	private static void commit( final File tmp, final File target ) throws IOException {
+		if ( target.exists() ) {
+			target.delete();
+		}
+		if ( !tmp.renameTo( target ) ) throw new IOException( "Could not rename '" + tmp.getAbsolutePath() + "'!" );
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ *
+ */
+package com.jug.util;
+
+/**
+ * Average intensities along tilted lines through a pixel, using a
+ * precomputed table of taps.
+ * Line l (for l in <code>[0,2*radiusY]</code>, i.e. for
+ * <code>dy = l - radiusY</code>) consists of the <code>2*radiusX+1</code>
+ * sample points <code>(dx, dx * dy / radiusX)</code>, dx in
+ * <code>[-radiusX,radiusX]</code>, relative to the center pixel. Since dx is
+ * integer, linear interpolation only happens along y, hence each sample
+ * point corresponds to at most two taps (pixel offset and interpolation
+ * weight). Results equal the ones obtained by sampling the lines with an
+ * <code>NLinearInterpolatorFactory</code> (up to rounding).
+ * Instances are immutable and can be used by many threads concurrently.
+ *
+ * @author jug
+ */
+public class TiltedLineKernel {
+
+	// -------------------------------------------------------------------------------------
+	// fields
+	// -------------------------------------------------------------------------------------
+	private final int radiusX;
+	private final int samplesPerLine;
+
+	/**
+	 * The taps of line l are <code>lineStart[ l ]</code> to
+	 * <code>lineStart[ l + 1 ] - 1</code>.
+	 */
+	private final int[] lineStart;
+	private final int[] tapDx;
+	private final int[] tapDy;
+	private final double[] tapWeight;
+
+	private final int minDy;
+	private final int maxDy;
+
+	// -------------------------------------------------------------------------------------
+	// construction
+	// -------------------------------------------------------------------------------------
+	/**
+	 * @param radiusX
+	 *            half the (horizontal) length of all lines (&gt; 0).
+	 * @param radiusY
+	 *            the vertical offset of the line end points of the steepest
+	 *            lines.
+	 */
+	public TiltedLineKernel( final int radiusX, final int radiusY ) {
+		this.radiusX = radiusX;
+		samplesPerLine = 2 * radiusX + 1;
+
+		final int numLines = 2 * radiusY + 1;
+		final int maxTaps = 2 * numLines * samplesPerLine;
+		lineStart = new int[ numLines + 1 ];
+		final int[] dxs = new int[ maxTaps ];
+		final int[] dys = new int[ maxTaps ];
+		final double[] weights = new double[ maxTaps ];
+		int n = 0;
+		int min = 0;
+		int max = 0;
+		for ( int l = 0; l < numLines; l++ ) {
+			lineStart[ l ] = n;
+			final int dy = l - radiusY;
+			for ( int dx = -radiusX; dx <= radiusX; dx++ ) {
+				final double y = ( ( double ) dy / radiusX ) * dx;
+				final int y0 = ( int ) Math.floor( y );
+				final double w = y - y0;
+				dxs[ n ] = dx;
+				dys[ n ] = y0;
+				weights[ n ] = 1 - w;
+				n++;
+				min = Math.min( min, y0 );
+				max = Math.max( max, y0 );
+				if ( w > 0 ) {
+					dxs[ n ] = dx;
+					dys[ n ] = y0 + 1;
+					weights[ n ] = w;
+					n++;
+					max = Math.max( max, y0 + 1 );
+				}
+			}
+		}
+		lineStart[ numLines ] = n;
+
+		tapDx = new int[ n ];
+		tapDy = new int[ n ];
+		tapWeight = new double[ n ];
+		System.arraycopy( dxs, 0, tapDx, 0, n );
+		System.arraycopy( dys, 0, tapDy, 0, n );
+		System.arraycopy( weights, 0, tapWeight, 0, n );
+		minDy = min;
+		maxDy = max;
+	}
+
+	// -------------------------------------------------------------------------------------
+	// getters
+	// -------------------------------------------------------------------------------------
+	/**
+	 * @return the largest horizontal distance of a tap from the center pixel.
+	 */
+	public int getRadiusX() {
+		return radiusX;
+	}
+
+	/**
+	 * @return the smallest (most negative) vertical offset of a tap.
+	 */
+	public int getMinDy() {
+		return minDy;
+	}
+
+	/**
+	 * @return the largest vertical offset of a tap.
+	 */
+	public int getMaxDy() {
+		return maxDy;
+	}
+
+	// -------------------------------------------------------------------------------------
+	// methods
+	// -------------------------------------------------------------------------------------
+	/**
+	 * @param width
+	 *            the row length of the data the kernel will be applied to.
+	 * @return the index offset (relative to the center pixel) of each tap in
+	 *         data stored row by row.
+	 */
+	public int[] getTapOffsets( final int width ) {
+		final int[] ret = new int[ tapDx.length ];
+		for ( int t = 0; t < ret.length; t++ ) {
+			ret[ t ] = tapDy[ t ] * width + tapDx[ t ];
+		}
+		return ret;
+	}
+
+	/**
+	 * @param data
+	 *            the image data, stored row by row.
+	 * @param center
+	 *            index of the center pixel in <code>data</code>.
+	 * @param tapOffsets
+	 *            as returned by <code>getTapOffsets</code> for the row length
+	 *            of <code>data</code>.
+	 * @return the largest average intensity along any of the lines through
+	 *         the given center pixel.
+	 */
+	public double getMaxLineAverage( final double[] data, final int center, final int[] tapOffsets ) {
+		double max = Double.NEGATIVE_INFINITY;
+		for ( int l = 0; l < lineStart.length - 1; l++ ) {
+			double sum = 0;
+			for ( int t = lineStart[ l ]; t < lineStart[ l + 1 ]; t++ ) {
+				sum += tapWeight[ t ] * data[ center + tapOffsets[ t ] ];
+			}
+			if ( sum > max ) {
+				max = sum;
+			}
+		}
+		return max / samplesPerLine;
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ *
+ */
+package com.jug.util;
+
+import net.imglib2.img.basictypeaccess.DoubleAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+
+/**
+ * A <code>DoubleAccess</code> that stores values in [0,1] as 16 bit fixed
+ * point numbers in a <code>short[]</code>. Values outside of [0,1] are
+ * clamped. Used as storage of normalized <code>DoubleType</code> images at a
+ * quarter of the memory (quantization step 1/65535).
+ *
+ * @author jug
+ */
+public class UnsignedShortBackedDoubleArray implements DoubleAccess, ArrayDataAccess< UnsignedShortBackedDoubleArray > {
+
+	private static final double SCALE = 65535.0;
+
+	protected short data[];
+
+	public UnsignedShortBackedDoubleArray( final int numEntities ) {
+		this.data = new short[ numEntities ];
+	}
+
+	public UnsignedShortBackedDoubleArray( final short[] data ) {
+		this.data = data;
+	}
+
+	public void close() {
+		data = null;
+	}
+
+	@Override
+	public double getValue( final int index ) {
+		return decode( data[ index ] );
+	}
+
+	@Override
+	public void setValue( final int index, final double value ) {
+		data[ index ] = encode( value );
+	}
+
+	/**
+	 * @return the given value in [0,1] as 16 bit fixed point number.
+	 */
+	static short encode( final double value ) {
+		if ( value <= 0 ) return 0;
+		if ( value >= 1 ) return ( short ) 0xffff;
+		return ( short ) ( int ) ( value * SCALE + 0.5 );
+	}
+
+	/**
+	 * @return the value in [0,1] encoded by the given 16 bit fixed point
+	 *         number.
+	 */
+	static double decode( final short value ) {
+		return ( value & 0xffff ) / SCALE;
+	}
+
+	@Override
+	public UnsignedShortBackedDoubleArray createArray( final int numEntities ) {
+		return new UnsignedShortBackedDoubleArray( numEntities );
+	}
+
+	@Override
+	public short[] getCurrentStorageArray() {
+		return data;
+	}
+}